@@ -0,0 +1,163 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JsonProtoCodec} with the {@code JsonFormat} + {@code DynamicMessage} path
+ * the sampler used before, in both directions, on a typical request/response message:
+ * <pre>
+ * mvn -Pjmh package
+ * java -jar target/benchmarks.jar JsonProtoCodecBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonProtoCodecBenchmark {
+    private static final String JSON = "{"
+            + "\"id\": \"1234567890\", \"name\": \"Jane Doe\", \"email\": \"jane.doe@example.com\","
+            + "\"active\": true, \"score\": 87.5, \"status\": \"ACTIVE\","
+            + "\"tags\": [\"premium\", \"beta\", \"newsletter\"], \"scores\": [10, 20, 30, 40, 50],"
+            + "\"address\": {\"street\": \"1 Main Street\", \"city\": \"Springfield\", \"zip\": \"12345\"},"
+            + "\"orders\": ["
+            + "{\"orderId\": \"1001\", \"amount\": 19.99, \"quantity\": 1},"
+            + "{\"orderId\": \"1002\", \"amount\": 5.25, \"quantity\": 4},"
+            + "{\"orderId\": \"1003\", \"amount\": 120.0, \"quantity\": 2}],"
+            + "\"attributes\": {\"plan\": \"gold\", \"region\": \"eu-west\", \"locale\": \"en_GB\"}"
+            + "}";
+
+    private Descriptors.Descriptor userType;
+    private JsonFormat.Parser parser;
+    private JsonFormat.Printer printer;
+    private JsonProtoCodec codec;
+    private byte[] wireBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        userType = buildUserType();
+        parser = JsonFormat.parser().ignoringUnknownFields();
+        printer = JsonFormat.printer().includingDefaultValueFields();
+        codec = JsonProtoCodec.forType(userType);
+        wireBytes = jsonFormatEncode();
+
+        // Both paths must agree, or the comparison is meaningless
+        DynamicMessage expected = DynamicMessage.parseFrom(userType, wireBytes);
+        DynamicMessage actual = DynamicMessage.parseFrom(userType, codecEncode());
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Codec encoding differs from JsonFormat:\n" + actual + "\nvs\n" + expected);
+        }
+        DynamicMessage.Builder reparsed = DynamicMessage.newBuilder(userType);
+        parser.merge(codecDecode(), reparsed);
+        if (!expected.equals(reparsed.build())) {
+            throw new IllegalStateException("Codec JSON does not parse back to the same message:\n" + codecDecode());
+        }
+    }
+
+    @Benchmark
+    public byte[] jsonFormatEncode() throws Exception {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(userType);
+        parser.merge(JSON, builder);
+        return builder.build().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] codecEncode() throws Exception {
+        return codec.jsonToBytes(JSON);
+    }
+
+    @Benchmark
+    public String jsonFormatDecode() throws Exception {
+        return printer.print(DynamicMessage.parseFrom(userType, wireBytes));
+    }
+
+    @Benchmark
+    public String codecDecode() throws Exception {
+        return codec.bytesToJson(wireBytes);
+    }
+
+    private static Descriptors.Descriptor buildUserType() throws Descriptors.DescriptorValidationException {
+        DescriptorProtos.DescriptorProto address = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Address")
+                .addField(field("street", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("city", 2, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("zip", 3, FieldDescriptorProto.Type.TYPE_STRING))
+                .build();
+        DescriptorProtos.DescriptorProto order = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Order")
+                .addField(field("order_id", 1, FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(field("amount", 2, FieldDescriptorProto.Type.TYPE_DOUBLE))
+                .addField(field("quantity", 3, FieldDescriptorProto.Type.TYPE_INT32))
+                .build();
+        DescriptorProtos.DescriptorProto attributesEntry = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("AttributesEntry")
+                .addField(field("key", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("value", 2, FieldDescriptorProto.Type.TYPE_STRING))
+                .setOptions(DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true))
+                .build();
+        DescriptorProtos.DescriptorProto user = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("User")
+                .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(field("name", 2, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("email", 3, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("active", 4, FieldDescriptorProto.Type.TYPE_BOOL))
+                .addField(field("score", 5, FieldDescriptorProto.Type.TYPE_DOUBLE))
+                .addField(field("status", 6, FieldDescriptorProto.Type.TYPE_ENUM).setTypeName(".bench.Status"))
+                .addField(repeated(field("tags", 7, FieldDescriptorProto.Type.TYPE_STRING)))
+                .addField(repeated(field("scores", 8, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addField(field("address", 9, FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName(".bench.Address"))
+                .addField(repeated(field("orders", 10, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(".bench.Order")))
+                .addField(repeated(field("attributes", 11, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(".bench.User.AttributesEntry")))
+                .addNestedType(attributesEntry)
+                .build();
+        DescriptorProtos.EnumDescriptorProto status = DescriptorProtos.EnumDescriptorProto.newBuilder()
+                .setName("Status")
+                .addValue(DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName("UNKNOWN").setNumber(0))
+                .addValue(DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName("ACTIVE").setNumber(1))
+                .addValue(DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName("SUSPENDED").setNumber(2))
+                .build();
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("bench.proto")
+                .setPackage("bench")
+                .setSyntax("proto3")
+                .addMessageType(address)
+                .addMessageType(order)
+                .addMessageType(user)
+                .addEnumType(status)
+                .build();
+        return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0])
+                .findMessageTypeByName("User");
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    private static FieldDescriptorProto.Builder repeated(FieldDescriptorProto.Builder field) {
+        return field.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+    }
+}
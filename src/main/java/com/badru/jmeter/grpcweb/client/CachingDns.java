@@ -0,0 +1,80 @@
+package com.badru.jmeter.grpcweb.client;
+
+import okhttp3.Dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolver that keeps each lookup for a fixed time to live instead of asking the system
+ * resolver for every new connection. The JDK does not expose record TTLs, so the TTL is
+ * configured; it should match (or stay below) the TTL of the records being tested.
+ */
+public class CachingDns implements Dns {
+    private static final Map<Long, CachingDns> INSTANCES = new ConcurrentHashMap<>();
+
+    private final long ttlNanos;
+    private final Dns delegate;
+    private final Map<String, CachedLookup> cache = new ConcurrentHashMap<>();
+
+    private CachingDns(long ttlSeconds) {
+        this(ttlSeconds, Dns.SYSTEM);
+    }
+
+    /** A resolver of its own, caching the answers of {@code delegate}; used by tests. */
+    CachingDns(long ttlSeconds, Dns delegate) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the resolver for the given TTL. Instances are shared because OkHttp only
+     * pools connections across clients that use the same {@link Dns} instance.
+     */
+    public static CachingDns forTtl(long ttlSeconds) {
+        return INSTANCES.computeIfAbsent(Math.max(0L, ttlSeconds), CachingDns::new);
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = System.nanoTime();
+        CachedLookup cached = cache.get(hostname);
+        if (cached != null && now - cached.resolvedAt < ttlNanos) {
+            return cached.addresses;
+        }
+        List<InetAddress> addresses = Collections.unmodifiableList(delegate.lookup(hostname));
+        cache.put(hostname, new CachedLookup(addresses, now));
+        return addresses;
+    }
+
+    public long getTtlNanos() { return ttlNanos; }
+
+    private static class CachedLookup {
+        final List<InetAddress> addresses;
+        final long resolvedAt;
+
+        CachedLookup(List<InetAddress> addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    /** Resolves every hostname to one fixed address, pinning a client to a single backend. */
+    static class PinnedDns implements Dns {
+        private final List<InetAddress> address;
+
+        PinnedDns(InetAddress address) {
+            this.address = Collections.singletonList(address);
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) {
+            return address;
+        }
+    }
+}
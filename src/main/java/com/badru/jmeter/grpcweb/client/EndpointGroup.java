@@ -0,0 +1,232 @@
+package com.badru.jmeter.grpcweb.client;
+
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The set of gRPC-Web backends a sampler spreads its calls over. The server URL may list
+ * several endpoints separated by commas or whitespace; with {@code resolveAll} each
+ * hostname is expanded to one endpoint per resolved address and re-resolved when the
+ * DNS TTL expires. Groups are shared by all threads using the same configuration, so
+ * in-flight counts and per-backend statistics cover the whole load generator.
+ */
+public class EndpointGroup {
+    private static final Logger log = LoggerFactory.getLogger(EndpointGroup.class);
+    private static final Map<String, EndpointGroup> GROUPS = new ConcurrentHashMap<>();
+
+    public enum Policy { ROUND_ROBIN, LEAST_IN_FLIGHT, POWER_OF_TWO }
+
+    private final List<String> urls;
+    private final Policy policy;
+    private final boolean resolveAll;
+    private final CachingDns dns;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Endpoint> known = new HashMap<>();
+    private volatile List<Endpoint> endpoints;
+    private volatile long refreshAt;
+
+    /** A group of its own, outside the shared ones; {@link #forSpec} is the normal way in. */
+    EndpointGroup(List<String> urls, Policy policy, boolean resolveAll, CachingDns dns) {
+        this.urls = urls;
+        this.policy = policy;
+        this.resolveAll = resolveAll;
+        this.dns = dns;
+        refresh();
+    }
+
+    /** Returns the shared group for a server URL list and balancing settings. */
+    public static EndpointGroup forSpec(String serverUrls, Policy policy, boolean resolveAll, long dnsTtlSeconds) {
+        String key = policy + "|" + resolveAll + "|" + dnsTtlSeconds + "|" + serverUrls;
+        return GROUPS.computeIfAbsent(key, k -> {
+            List<String> urls = new ArrayList<>();
+            for (String url : serverUrls.trim().split("[,\\s]+")) {
+                if (!url.isEmpty()) urls.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+            }
+            if (urls.isEmpty()) throw new IllegalArgumentException("Server URL not set");
+            return new EndpointGroup(urls, policy, resolveAll, CachingDns.forTtl(dnsTtlSeconds));
+        });
+    }
+
+    /** Parses a policy name as stored in the test plan; blank means round robin. */
+    public static Policy parsePolicy(String value) {
+        if (value == null || value.trim().isEmpty()) return Policy.ROUND_ROBIN;
+        return Policy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /** Logs per-backend statistics of every group that served more than one backend and forgets them. */
+    public static void logSummariesAndReset() {
+        for (EndpointGroup group : GROUPS.values()) {
+            Collection<Endpoint> all;
+            synchronized (group) {
+                all = new ArrayList<>(group.known.values());
+            }
+            if (all.size() < 2) continue;
+            for (Endpoint ep : all) {
+                logSummary(ep, "");
+            }
+        }
+        GROUPS.clear();
+    }
+
+    private static void logSummary(Endpoint ep, String note) {
+        long calls = ep.calls.sum();
+        if (calls == 0) return;
+        log.info("[Backend] {}{}: {} calls, {} errors, mean latency {} ms", ep.label, note, calls, ep.errors.sum(),
+                TimeUnit.NANOSECONDS.toMillis(ep.totalLatencyNanos.sum() / calls));
+    }
+
+    public Endpoint select() {
+        if (resolveAll && System.nanoTime() - refreshAt > 0) {
+            refresh();
+        }
+        List<Endpoint> current = endpoints;
+        int size = current.size();
+        if (size == 1) return current.get(0);
+        switch (policy) {
+            case LEAST_IN_FLIGHT: {
+                int start = Math.floorMod(next.getAndIncrement(), size);
+                Endpoint best = current.get(start);
+                for (int i = 1; i < size; i++) {
+                    Endpoint candidate = current.get((start + i) % size);
+                    if (candidate.inFlight.get() < best.inFlight.get()) best = candidate;
+                }
+                return best;
+            }
+            case POWER_OF_TWO: {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int a = random.nextInt(size);
+                int b = random.nextInt(size - 1);
+                if (b >= a) b++;
+                Endpoint first = current.get(a);
+                Endpoint second = current.get(b);
+                return second.inFlight.get() < first.inFlight.get() ? second : first;
+            }
+            default:
+                return current.get(Math.floorMod(next.getAndIncrement(), size));
+        }
+    }
+
+    public List<Endpoint> getEndpoints() { return endpoints; }
+
+    public CachingDns getDns() { return dns; }
+
+    private synchronized void refresh() {
+        if (endpoints != null && System.nanoTime() - refreshAt <= 0) return;
+        List<Endpoint> resolved = new ArrayList<>();
+        for (String url : urls) {
+            HttpUrl parsed = HttpUrl.parse(url);
+            if (parsed == null) throw new IllegalArgumentException("Invalid server URL: " + url);
+            if (!resolveAll) {
+                resolved.add(endpoint(url, url, null));
+                continue;
+            }
+            try {
+                for (InetAddress address : dns.lookup(parsed.host())) {
+                    String label = parsed.host() + "@" + address.getHostAddress() + ":" + parsed.port();
+                    resolved.add(endpoint(label, url, address));
+                }
+            } catch (UnknownHostException ex) {
+                log.warn("[Backend] cannot resolve {}: {}", parsed.host(), ex.getMessage());
+            }
+        }
+        if (resolved.isEmpty()) {
+            if (endpoints == null) throw new IllegalArgumentException("No backend could be resolved for " + urls);
+            resolved = endpoints; // keep the last known backends through a DNS outage
+        }
+        endpoints = Collections.unmodifiableList(resolved);
+        prune(resolved);
+        refreshAt = System.nanoTime() + Math.max(dns.getTtlNanos(), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Forgets backends whose address is no longer resolved, once their last call has ended,
+     * so changing DNS answers (e.g. autoscaled pools) do not pile up counters for the whole run.
+     */
+    private void prune(List<Endpoint> current) {
+        if (known.size() == current.size()) return;
+        Iterator<Endpoint> it = known.values().iterator();
+        while (it.hasNext()) {
+            Endpoint ep = it.next();
+            if (!current.contains(ep) && ep.inFlight.get() == 0) {
+                logSummary(ep, " (no longer resolved)");
+                it.remove();
+            }
+        }
+    }
+
+    private Endpoint endpoint(String label, String baseUrl, InetAddress address) {
+        return known.computeIfAbsent(label, l -> new Endpoint(l, baseUrl, address));
+    }
+
+    /** One backend: a base URL, optionally pinned to a single address, with shared load counters. */
+    public static class Endpoint {
+        private final String label;
+        private final String baseUrl;
+        private final Dns pinnedDns;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+
+        Endpoint(String label, String baseUrl, InetAddress address) {
+            this.label = label;
+            this.baseUrl = baseUrl;
+            this.pinnedDns = address != null ? new CachingDns.PinnedDns(address) : null;
+        }
+
+        public String getLabel() { return label; }
+        public String getBaseUrl() { return baseUrl; }
+        /** The resolver pinning connections to this backend's address, or {@code null} if not pinned. */
+        public Dns getPinnedDns() { return pinnedDns; }
+        public int getInFlight() { return inFlight.get(); }
+
+        /** Marks a call as started; the returned handle must be released exactly once. */
+        Lease acquire() {
+            inFlight.incrementAndGet();
+            return new Lease(this);
+        }
+    }
+
+    /** An in-flight call on an endpoint. Releasing it records the outcome in the endpoint's statistics. */
+    static class Lease {
+        private final Endpoint endpoint;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        Endpoint getEndpoint() { return endpoint; }
+
+        void release(long latencyNanos, boolean success) {
+            if (!released.compareAndSet(false, true)) return;
+            endpoint.inFlight.decrementAndGet();
+            endpoint.calls.increment();
+            endpoint.totalLatencyNanos.add(latencyNanos);
+            if (!success) endpoint.errors.increment();
+        }
+
+        void cancel() {
+            if (released.compareAndSet(false, true)) endpoint.inFlight.decrementAndGet();
+        }
+    }
+}
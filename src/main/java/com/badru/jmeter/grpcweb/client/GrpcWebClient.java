@@ -2,17 +2,30 @@
 package com.badru.jmeter.grpcweb.client;
 
 import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
 import okhttp3.*;
 import okio.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GrpcWebClient {
     private static final Logger log = LoggerFactory.getLogger(GrpcWebClient.class);
@@ -20,94 +33,544 @@ public class GrpcWebClient {
     private static final String CONTENT_TYPE_GRPC_WEB = "application/grpc-web+proto";
     private static final String USER_AGENT = "grpc-web-jmeter-plugin/1.0";
 
+    private static final int STATUS_OK = 0;
+    private static final int STATUS_CANCELLED = 1;
+    private static final int STATUS_UNKNOWN = 2;
+    private static final int STATUS_UNAVAILABLE = 14;
+
+    /**
+     * Clients created with {@code sharedPool} derive from this one, so sampler threads share a
+     * connection pool and dispatcher and reuse connections opened by {@link #preconnect(int)}.
+     * Other clients get their own pool, so each thread opens its own connections.
+     */
+    private static final OkHttpClient SHARED_HTTP_CLIENT = createSharedHttpClient();
+
     private final OkHttpClient httpClient;
-    private final String serverUrl;
+    private final EndpointGroup endpoints;
     private final int timeout;
+    private final Map<EndpointGroup.Endpoint, OkHttpClient> pinnedClients = new ConcurrentHashMap<>();
+    private ServiceConfig serviceConfig;
+    private boolean requireGrpcStatus;
 
     public GrpcWebClient(String serverUrl, int timeoutSeconds) {
-        this.serverUrl = serverUrl;
+        this(EndpointGroup.forSpec(serverUrl, EndpointGroup.Policy.ROUND_ROBIN, false, 0L), timeoutSeconds);
+    }
+
+    public GrpcWebClient(EndpointGroup endpoints, int timeoutSeconds) {
+        this(endpoints, timeoutSeconds, null);
+    }
+
+    /**
+     * @param tls shared TLS settings, or {@code null} for {@link TlsConfig#defaults()}
+     */
+    public GrpcWebClient(EndpointGroup endpoints, int timeoutSeconds, TlsConfig tls) {
+        this(endpoints, timeoutSeconds, tls, false);
+    }
+
+    /**
+     * @param tls shared TLS settings, or {@code null} for {@link TlsConfig#defaults()}
+     * @param sharedPool use the connection pool shared by all clients instead of a private one
+     */
+    public GrpcWebClient(EndpointGroup endpoints, int timeoutSeconds, TlsConfig tls, boolean sharedPool) {
+        this.endpoints = endpoints;
         this.timeout = timeoutSeconds;
-        this.httpClient = new OkHttpClient.Builder()
+        OkHttpClient.Builder builder = (sharedPool ? SHARED_HTTP_CLIENT.newBuilder() : new OkHttpClient.Builder())
+                .dns(endpoints.getDns())
                 .connectTimeout(timeoutSeconds, TimeUnit.SECONDS)
                 .writeTimeout(timeoutSeconds, TimeUnit.SECONDS)
-                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        // Always set, as OkHttp builds a new SSL context, and session cache, for each client otherwise
+        if (tls == null) tls = TlsConfig.defaults();
+        builder.sslSocketFactory(tls.getSocketFactory(), tls.getTrustManager())
+                .connectionSpecs(tls.getConnectionSpecs());
+        this.httpClient = builder.build();
+    }
+
+    private static OkHttpClient createSharedHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(4096);
+        dispatcher.setMaxRequestsPerHost(4096);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(1024, 5, TimeUnit.MINUTES))
                 .build();
     }
 
+    /** Sets the retry/hedging configuration; {@code null} means a single attempt per call. */
+    public void setServiceConfig(ServiceConfig serviceConfig) {
+        this.serviceConfig = serviceConfig;
+    }
+
+    /**
+     * Whether an HTTP 200 response without a grpc-status counts as UNKNOWN, as the gRPC spec
+     * says, rather than OK. Off by default, which keeps the behaviour of earlier versions.
+     */
+    public void setRequireGrpcStatus(boolean requireGrpcStatus) {
+        this.requireGrpcStatus = requireGrpcStatus;
+    }
+
     public GrpcWebResponse executeRequest(GrpcWebRequest request) throws IOException {
-        String fullUrl = (request.getPackageName() != null && !request.getPackageName().isEmpty())
-                ? String.format("%s/%s.%s/%s", serverUrl, request.getPackageName(), request.getServiceName(), request.getMethodName())
-                : String.format("%s/%s/%s", serverUrl, request.getServiceName(), request.getMethodName());
-        log.info("[Request URL] {}", fullUrl);
-
-        byte[] bodyBytes;
-        if (request.isUseTextFormat()) {
-            String json = request.getJsonText();
-            log.debug("[Request JSON] {}", json);
-            bodyBytes = json.getBytes(StandardCharsets.UTF_8);
+        String fullServiceName = (request.getPackageName() != null && !request.getPackageName().isEmpty())
+                ? request.getPackageName() + "." + request.getServiceName()
+                : request.getServiceName();
+        String path = String.format("/%s/%s", fullServiceName, request.getMethodName());
+        log.info("[Request path] {}", path);
+
+        byte[] grpcWebPayload;
+        if (request.getFramedBody() != null) {
+            grpcWebPayload = request.getFramedBody();
+            log.debug("[Pre-framed payload size] {}", grpcWebPayload.length);
         } else {
-            DynamicMessage msg = request.getMessage();
-            bodyBytes = msg.toByteArray();
-            log.debug("[Request Protobuf bytes size] {}", bodyBytes.length);
-        }
+            byte[] bodyBytes;
+            if (request.isUseTextFormat()) {
+                String json = request.getJsonText();
+                log.debug("[Request JSON] {}", json);
+                bodyBytes = json.getBytes(StandardCharsets.UTF_8);
+            } else if (request.getMessageBytes() != null) {
+                bodyBytes = request.getMessageBytes();
+                log.debug("[Request Protobuf bytes size] {}", bodyBytes.length);
+            } else {
+                DynamicMessage msg = request.getMessage();
+                bodyBytes = msg.toByteArray();
+                log.debug("[Request Protobuf bytes size] {}", bodyBytes.length);
+            }
 
-        Buffer buf = new Buffer();
-        buf.writeByte(0x0);
-        buf.writeInt(bodyBytes.length);
-        buf.write(bodyBytes);
-        byte[] grpcWebPayload = buf.readByteArray();
+            Buffer buf = new Buffer();
+            buf.writeByte(0x0);
+            buf.writeInt(bodyBytes.length);
+            buf.write(bodyBytes);
+            grpcWebPayload = buf.readByteArray();
+        }
         log.debug("[gRPC-Web payload (base64)] {}", Base64.getEncoder().encodeToString(grpcWebPayload));
 
         MediaType mediaType = MediaType.get(CONTENT_TYPE_GRPC_WEB);
         RequestBody reqBody = RequestBody.create(mediaType, grpcWebPayload);
-        Request.Builder builder = new Request.Builder()
-                .url(fullUrl)
-                .post(reqBody)
-                .addHeader("Content-Type", CONTENT_TYPE_GRPC_WEB)
-                .addHeader("User-Agent", USER_AGENT)
-                .addHeader("X-Grpc-Web", "1")
-                .addHeader("Accept", "application/grpc-web+proto");
+        // No URL yet; each attempt targets the backend chosen by the endpoint group
+        Headers.Builder builder = new Headers.Builder()
+                .add("Content-Type", CONTENT_TYPE_GRPC_WEB)
+                .add("User-Agent", USER_AGENT)
+                .add("X-Grpc-Web", "1")
+                .add("Accept", "application/grpc-web+proto");
 
         if (request.getHeaders() != null) {
-            request.getHeaders().forEach(builder::addHeader);
+            request.getHeaders().forEach(builder::add);
         }
 
-        Request okReq = builder.build();
+        RequestTemplate template = new RequestTemplate(path, builder.build(), reqBody);
 
         Map<String, String> sentHeaders = new HashMap<>();
-        okReq.headers().names().forEach(name -> sentHeaders.put(name, okReq.header(name)));
+        template.headers.names().forEach(name -> sentHeaders.put(name, template.headers.get(name)));
+
+        log.info("[Request Headers] {}", template.headers);
 
-        log.info("[Request Headers] {}", okReq.headers());
-        Response resp = httpClient.newCall(okReq).execute();
+        ServiceConfig.MethodConfig methodConfig = serviceConfig != null
+                ? serviceConfig.findMethodConfig(fullServiceName, request.getMethodName())
+                : null;
+        long callStart = System.nanoTime();
+        if (methodConfig != null && methodConfig.getHedgingPolicy() != null) {
+            return executeHedged(template, sentHeaders, methodConfig.getHedgingPolicy(), callStart);
+        }
+        if (methodConfig != null && methodConfig.getRetryPolicy() != null) {
+            return executeWithRetry(template, sentHeaders, methodConfig.getRetryPolicy(), callStart);
+        }
+        return executeAttempt(template, sentHeaders, 1, callStart);
+    }
 
+    private GrpcWebResponse executeAttempt(RequestTemplate template, Map<String, String> sentHeaders,
+                                           int attemptNumber, long callStart) throws IOException {
+        Attempt attempt = new Attempt(attemptNumber, System.currentTimeMillis());
+        long attemptStart = System.nanoTime();
+        try (Response resp = newCall(template, attempt).execute()) {
+            long headersAt = System.nanoTime();
+            return readResponse(resp, sentHeaders, attempt, attemptStart, headersAt, callStart);
+        } catch (IOException ex) {
+            attempt.fail(STATUS_UNAVAILABLE, ex.toString(), System.nanoTime() - attemptStart);
+            throw ex;
+        } finally {
+            attempt.releaseLease();
+        }
+    }
+
+    /** Picks a backend for the attempt and creates the call against it. */
+    private Call newCall(RequestTemplate template, Attempt attempt) {
+        EndpointGroup.Endpoint endpoint = endpoints.select();
+        attempt.lease = endpoint.acquire();
+        if (pinnedClients.size() > endpoints.getEndpoints().size()) {
+            // Backends dropped from DNS no longer need their pinned clients
+            pinnedClients.keySet().retainAll(endpoints.getEndpoints());
+        }
+        log.debug("[Request URL] {}{}", endpoint.getBaseUrl(), template.path);
+        Request okReq = new Request.Builder()
+                .url(endpoint.getBaseUrl() + template.path)
+                .headers(template.headers)
+                .post(template.body)
+                .build();
+        OkHttpClient client = endpoint.getPinnedDns() == null ? httpClient
+                : pinnedClients.computeIfAbsent(endpoint, ep -> httpClient.newBuilder().dns(ep.getPinnedDns()).build());
+        return client.newCall(okReq);
+    }
+
+    /**
+     * Sequential retries as described by the gRPC retry design (A6): a failed attempt
+     * with a retryable status is retried after a randomized exponential backoff, unless
+     * the server pushes back or the shared retry budget is exhausted.
+     */
+    private GrpcWebResponse executeWithRetry(RequestTemplate template, Map<String, String> sentHeaders,
+                                             ServiceConfig.RetryPolicy policy, long callStart) throws IOException {
+        ServiceConfig.RetryThrottle throttle = serviceConfig.getRetryThrottle();
+        List<Attempt> attempts = new ArrayList<>();
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            GrpcWebResponse resp;
+            IOException failure = null;
+            Attempt attempt = new Attempt(attemptNumber, System.currentTimeMillis());
+            long attemptStart = System.nanoTime();
+            try (Response httpResp = newCall(template, attempt).execute()) {
+                resp = readResponse(httpResp, sentHeaders, attempt, attemptStart, System.nanoTime(), callStart);
+            } catch (IOException ex) {
+                if (ex instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) throw ex;
+                failure = ex;
+                resp = null;
+                attempt.fail(STATUS_UNAVAILABLE, ex.toString(), System.nanoTime() - attemptStart);
+            } finally {
+                attempt.releaseLease();
+            }
+            attempts.add(attempt);
+
+            int status = attempt.getGrpcStatus();
+            if (status == STATUS_OK) {
+                if (throttle != null) throttle.onSuccess();
+                return finish(resp, attempts);
+            }
+            boolean retryable = policy.isRetryable(status);
+            if (retryable && throttle != null) throttle.onFailure();
+
+            Long pushbackMillis = resp != null ? parsePushback(resp.getHeaders()) : null;
+            boolean canRetry = retryable
+                    && attemptNumber < policy.getMaxAttempts()
+                    && (throttle == null || throttle.isRetryAllowed())
+                    && (pushbackMillis == null || pushbackMillis >= 0);
+            if (!canRetry) {
+                if (failure != null) throw failure;
+                return finish(resp, attempts);
+            }
+
+            long backoffNanos = pushbackMillis != null
+                    ? TimeUnit.MILLISECONDS.toNanos(pushbackMillis)
+                    : (long) (ThreadLocalRandom.current().nextDouble() * policy.getBackoffCeilingNanos(attemptNumber));
+            log.debug("[Retry] attempt {} failed with status {}, retrying in {} ms",
+                    attemptNumber, status, TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during retry backoff");
+            }
+        }
+    }
+
+    /**
+     * Hedging as described by the gRPC retry design (A6): a new copy of the call is sent
+     * every {@code hedgingDelay} (or immediately after a non-fatal failure) until one
+     * attempt commits; the remaining in-flight attempts are then cancelled.
+     */
+    private GrpcWebResponse executeHedged(RequestTemplate template, Map<String, String> sentHeaders,
+                                          ServiceConfig.HedgingPolicy policy, long callStart) throws IOException {
+        ServiceConfig.RetryThrottle throttle = serviceConfig.getRetryThrottle();
+        BlockingQueue<HedgeOutcome> outcomes = new LinkedBlockingQueue<>();
+        Map<Integer, Call> inFlight = new HashMap<>();
+        Map<Integer, Attempt> pending = new HashMap<>();
+        Map<Integer, Long> startNanos = new HashMap<>();
+        List<Attempt> attempts = new ArrayList<>();
+        HedgeOutcome last = null;
+
+        int launched = 0;
+        launchHedge(template, sentHeaders, ++launched, callStart, outcomes, inFlight, pending, startNanos);
+        try {
+            while (true) {
+                boolean canLaunchMore = launched < policy.getMaxAttempts()
+                        && (throttle == null || throttle.isRetryAllowed());
+                HedgeOutcome outcome = canLaunchMore
+                        ? outcomes.poll(policy.getHedgingDelayNanos(), TimeUnit.NANOSECONDS)
+                        : (inFlight.isEmpty() ? null : outcomes.take());
+                if (outcome == null) {
+                    if (!canLaunchMore) break;
+                    launchHedge(template, sentHeaders, ++launched, callStart, outcomes, inFlight, pending, startNanos);
+                    continue;
+                }
+                inFlight.remove(outcome.attempt.getNumber());
+                pending.remove(outcome.attempt.getNumber());
+                attempts.add(outcome.attempt);
+                last = outcome;
+
+                int status = outcome.attempt.getGrpcStatus();
+                if (status == STATUS_OK) {
+                    if (throttle != null) throttle.onSuccess();
+                    break;
+                }
+                if (!policy.isNonFatal(status)) break;
+                if (throttle != null) throttle.onFailure();
+                if (launched < policy.getMaxAttempts() && (throttle == null || throttle.isRetryAllowed())) {
+                    launchHedge(template, sentHeaders, ++launched, callStart, outcomes, inFlight, pending, startNanos);
+                } else if (inFlight.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for hedged attempts");
+        } finally {
+            long now = System.nanoTime();
+            for (Map.Entry<Integer, Call> e : inFlight.entrySet()) {
+                e.getValue().cancel();
+                // The cancelled call's callback may still touch its own Attempt, so record a copy.
+                Attempt loser = new Attempt(e.getKey(), pending.get(e.getKey()).getStartTimeMillis());
+                loser.hedged = e.getKey() > 1;
+                loser.fail(STATUS_CANCELLED, "Cancelled after another attempt committed", now - startNanos.get(e.getKey()));
+                attempts.add(loser);
+            }
+        }
+
+        Collections.sort(attempts, (a, b) -> Integer.compare(a.getNumber(), b.getNumber()));
+        if (last.response == null) throw last.failure;
+        return finish(last.response, attempts);
+    }
+
+    private void launchHedge(RequestTemplate template, Map<String, String> sentHeaders, int attemptNumber, long callStart,
+                             BlockingQueue<HedgeOutcome> outcomes, Map<Integer, Call> inFlight,
+                             Map<Integer, Attempt> pending, Map<Integer, Long> startNanos) {
+        Attempt attempt = new Attempt(attemptNumber, System.currentTimeMillis());
+        attempt.hedged = attemptNumber > 1;
+        long attemptStart = System.nanoTime();
+        Call call = newCall(template, attempt);
+        inFlight.put(attemptNumber, call);
+        pending.put(attemptNumber, attempt);
+        startNanos.put(attemptNumber, attemptStart);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                if (c.isCanceled()) {
+                    attempt.releaseLease();
+                    return;
+                }
+                attempt.fail(STATUS_UNAVAILABLE, e.toString(), System.nanoTime() - attemptStart);
+                outcomes.add(new HedgeOutcome(attempt, null, e));
+            }
+
+            @Override
+            public void onResponse(Call c, Response resp) {
+                long headersAt = System.nanoTime();
+                try (Response r = resp) {
+                    GrpcWebResponse parsed = readResponse(r, sentHeaders, attempt, attemptStart, headersAt, callStart);
+                    outcomes.add(new HedgeOutcome(attempt, parsed, null));
+                } catch (IOException | RuntimeException e) {
+                    if (c.isCanceled()) {
+                        attempt.releaseLease();
+                        return;
+                    }
+                    // A parse error must still be reported, or the caller waits for this attempt forever
+                    attempt.fail(STATUS_UNAVAILABLE, e.toString(), System.nanoTime() - attemptStart);
+                    outcomes.add(new HedgeOutcome(attempt, null,
+                            e instanceof IOException ? (IOException) e : new IOException(e)));
+                }
+            }
+        });
+    }
+
+    private GrpcWebResponse finish(GrpcWebResponse resp, List<Attempt> attempts) {
+        resp.setAttempts(attempts);
+        return resp;
+    }
+
+    private GrpcWebResponse readResponse(Response resp, Map<String, String> sentHeaders, Attempt attempt,
+                                         long attemptStart, long headersAt, long callStart) throws IOException {
         Map<String, String> headerMap = new HashMap<>();
         for (String name : resp.headers().names()) {
             headerMap.put(name, resp.header(name));
         }
 
-        byte[] respBytes = resp.body().bytes();
+        byte[] respBytes = resp.body() != null ? resp.body().bytes() : new byte[0];
         log.debug("[Raw response (base64)] {}", Base64.getEncoder().encodeToString(respBytes));
 
-        byte[] msgBytes = new byte[0];
-        String jsonString = null;
-        if (respBytes.length >= 5) {
-            int len = ((respBytes[1] & 0xFF) << 24) | ((respBytes[2] & 0xFF) << 16)
-                    | ((respBytes[3] & 0xFF) << 8) | (respBytes[4] & 0xFF);
-            msgBytes = new byte[Math.min(len, respBytes.length - 5)];
-            System.arraycopy(respBytes, 5, msgBytes, 0, msgBytes.length);
-            try {
-                jsonString = new String(msgBytes, StandardCharsets.UTF_8);
-                log.debug("[Decoded JSON] {}", jsonString);
-            } catch (Exception ex) {
-                log.warn("Failed to decode message bytes as UTF-8 JSON", ex);
+        // Trailers-only responses carry the status in the headers; otherwise it follows the
+        // message in a trailer frame (flag 0x80). Without either, derive it from HTTP status.
+        Map<String, String> trailers = new HashMap<>();
+        int msgOffset = -1;
+        int msgLength = 0;
+        int pos = 0;
+        while (pos + 5 <= respBytes.length) {
+            int flag = respBytes[pos] & 0xFF;
+            int len = ((respBytes[pos + 1] & 0xFF) << 24) | ((respBytes[pos + 2] & 0xFF) << 16)
+                    | ((respBytes[pos + 3] & 0xFF) << 8) | (respBytes[pos + 4] & 0xFF);
+            int available = Math.min(len, respBytes.length - pos - 5);
+            if ((flag & 0x80) != 0) {
+                parseTrailers(new String(respBytes, pos + 5, available, StandardCharsets.UTF_8), trailers);
+            } else if (msgOffset < 0) {
+                // Only the first message is decoded; later data frames are kept in the raw bytes.
+                // It is not copied out of the body until someone asks for it.
+                msgOffset = pos + 5;
+                msgLength = available;
+                if (log.isDebugEnabled()) {
+                    log.debug("[Decoded JSON] {}", new String(respBytes, msgOffset, msgLength, StandardCharsets.UTF_8));
+                }
+            }
+            pos += 5 + available;
+        }
+
+        String statusValue = trailers.containsKey("grpc-status") ? trailers.get("grpc-status") : resp.header("grpc-status");
+        String messageValue = trailers.containsKey("grpc-message") ? trailers.get("grpc-message") : resp.header("grpc-message");
+        int grpcStatus;
+        try {
+            if (statusValue != null) {
+                grpcStatus = Integer.parseInt(statusValue.trim());
+            } else {
+                grpcStatus = resp.code() == 200 && !requireGrpcStatus ? STATUS_OK : statusFromHttp(resp.code());
             }
+        } catch (NumberFormatException ex) {
+            grpcStatus = STATUS_UNKNOWN;
         }
+        String grpcMessage = messageValue != null ? percentDecode(messageValue) : (grpcStatus == STATUS_OK ? "OK" : resp.message());
+        headerMap.putAll(trailers);
 
-        return new GrpcWebResponse(resp.code(), 0, "OK", msgBytes, TimeUnit.SECONDS.toMillis(timeout), jsonString, headerMap, sentHeaders);
+        long end = System.nanoTime();
+        attempt.complete(resp.code(), grpcStatus, headersAt - attemptStart, end - attemptStart);
+        long responseTime = TimeUnit.NANOSECONDS.toMillis(headersAt - callStart);
+        GrpcWebResponse result = new GrpcWebResponse(resp.code(), grpcStatus, grpcMessage, null,
+                responseTime, null, headerMap, sentHeaders);
+        result.setAttempts(Collections.singletonList(attempt));
+        result.setBackend(attempt.getBackend());
+        result.setRawBytes(respBytes, msgOffset, msgLength);
+        return result;
+    }
+
+    private static void parseTrailers(String block, Map<String, String> into) {
+        for (String line : block.split("\r?\n")) {
+            int idx = line.indexOf(':');
+            if (idx > 0) {
+                into.put(line.substring(0, idx).trim().toLowerCase(), line.substring(idx + 1).trim());
+            }
+        }
+    }
+
+    private static Long parsePushback(Map<String, String> headers) {
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            if ("grpc-retry-pushback-ms".equalsIgnoreCase(e.getKey())) {
+                try {
+                    return Long.parseLong(e.getValue().trim());
+                } catch (NumberFormatException ex) {
+                    return -1L;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** HTTP to gRPC status mapping from the gRPC HTTP/2 protocol spec. */
+    static int statusFromHttp(int httpCode) {
+        switch (httpCode) {
+            case 200: return STATUS_UNKNOWN; // 200 without grpc-status is a protocol error
+            case 400: return 13;  // INTERNAL
+            case 401: return 16;  // UNAUTHENTICATED
+            case 403: return 7;   // PERMISSION_DENIED
+            case 404: return 12;  // UNIMPLEMENTED
+            case 429:
+            case 502:
+            case 503:
+            case 504: return STATUS_UNAVAILABLE;
+            default:  return STATUS_UNKNOWN;
+        }
+    }
+
+    private static String percentDecode(String value) {
+        if (value.indexOf('%') < 0) return value;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                try {
+                    out.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                    i += 2;
+                    continue;
+                } catch (NumberFormatException ignored) {
+                    // not an escape, keep the literal '%'
+                }
+            }
+            out.write(c);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens up to {@code connections} pooled connections to the server by sending that many
+     * concurrent {@code OPTIONS} requests (the CORS preflight gRPC-Web proxies answer), so
+     * DNS lookups and TCP/TLS handshakes happen before measurement starts. Only useful on a
+     * client with the shared pool; over HTTP/2 OkHttp coalesces the requests onto a single
+     * connection per address.
+     *
+     * @return the number of requests that received a response
+     */
+    public int preconnect(int connections) throws InterruptedException {
+        if (connections <= 0) return 0;
+        List<EndpointGroup.Endpoint> targets = endpoints.getEndpoints();
+        CountDownLatch done = new CountDownLatch(connections * targets.size());
+        AtomicInteger answered = new AtomicInteger();
+        for (EndpointGroup.Endpoint endpoint : targets) {
+            Request okReq = new Request.Builder()
+                    .url(endpoint.getBaseUrl() + "/")
+                    .method("OPTIONS", null)
+                    .addHeader("User-Agent", USER_AGENT)
+                    .addHeader("Origin", endpoint.getBaseUrl())
+                    .addHeader("Access-Control-Request-Method", "POST")
+                    .build();
+            OkHttpClient client = endpoint.getPinnedDns() == null ? httpClient
+                    : pinnedClients.computeIfAbsent(endpoint, ep -> httpClient.newBuilder().dns(ep.getPinnedDns()).build());
+            for (int i = 0; i < connections; i++) {
+                client.newCall(okReq).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call c, IOException e) {
+                        log.debug("[Preconnect] {} failed: {}", endpoint.getLabel(), e.toString());
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Call c, Response resp) {
+                        resp.close();
+                        answered.incrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        done.await(timeout, TimeUnit.SECONDS);
+        return answered.get();
     }
 
     public void close() {}
 
+    /** What every attempt of a call sends; the URL is added per attempt. */
+    private static class RequestTemplate {
+        final String path;
+        final Headers headers;
+        final RequestBody body;
+
+        RequestTemplate(String path, Headers headers, RequestBody body) {
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private static class HedgeOutcome {
+        final Attempt attempt;
+        final GrpcWebResponse response;
+        final IOException failure;
+
+        HedgeOutcome(Attempt attempt, GrpcWebResponse response, IOException failure) {
+            this.attempt = attempt;
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
     public static class GrpcWebRequest {
         private String packageName;
         private String serviceName;
@@ -116,6 +579,8 @@ public class GrpcWebClient {
         private boolean useTextFormat;
         private String jsonText;
         private Map<String, String> headers;
+        private byte[] messageBytes;
+        private byte[] framedBody;
 
         public String getPackageName() { return packageName; }
         public void setPackageName(String packageName) { this.packageName = packageName; }
@@ -137,17 +602,81 @@ public class GrpcWebClient {
 
         public Map<String, String> getHeaders() { return headers; }
         public void setHeaders(Map<String, String> headers) { this.headers = headers; }
+
+        /** The request message already serialized; used instead of {@link #getMessage()} when set. */
+        public byte[] getMessageBytes() { return messageBytes; }
+        public void setMessageBytes(byte[] messageBytes) { this.messageBytes = messageBytes; }
+
+        /** A complete gRPC-Web body, already framed; when set, the message and JSON are not used. */
+        public byte[] getFramedBody() { return framedBody; }
+        public void setFramedBody(byte[] framedBody) { this.framedBody = framedBody; }
+    }
+
+    /** Timing and outcome of a single HTTP attempt of a (possibly retried or hedged) call. */
+    public static class Attempt {
+        private final int number;
+        private final long startTimeMillis;
+        private EndpointGroup.Lease lease;
+        private boolean hedged;
+        private int httpStatusCode;
+        private int grpcStatus;
+        private long latencyNanos;
+        private long elapsedNanos;
+        private String error;
+
+        Attempt(int number, long startTimeMillis) {
+            this.number = number;
+            this.startTimeMillis = startTimeMillis;
+        }
+
+        void complete(int httpStatusCode, int grpcStatus, long latencyNanos, long elapsedNanos) {
+            this.httpStatusCode = httpStatusCode;
+            this.grpcStatus = grpcStatus;
+            this.latencyNanos = latencyNanos;
+            this.elapsedNanos = elapsedNanos;
+            if (lease != null) lease.release(latencyNanos, isSuccessful());
+        }
+
+        void fail(int grpcStatus, String error, long elapsedNanos) {
+            this.grpcStatus = grpcStatus;
+            this.error = error;
+            this.latencyNanos = elapsedNanos;
+            this.elapsedNanos = elapsedNanos;
+            if (lease != null) lease.release(elapsedNanos, false);
+        }
+
+        /** Frees the backend slot if the attempt ended without {@link #complete} or {@link #fail}. */
+        void releaseLease() {
+            if (lease != null) lease.cancel();
+        }
+
+        public int getNumber() { return number; }
+        public long getStartTimeMillis() { return startTimeMillis; }
+        public boolean isHedged() { return hedged; }
+        /** The backend this attempt was sent to, or {@code null} for cancelled-attempt records. */
+        public String getBackend() { return lease != null ? lease.getEndpoint().getLabel() : null; }
+        public int getHttpStatusCode() { return httpStatusCode; }
+        public int getGrpcStatus() { return grpcStatus; }
+        public long getLatencyMillis() { return TimeUnit.NANOSECONDS.toMillis(latencyNanos); }
+        public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+        public String getError() { return error; }
+        public boolean isSuccessful() { return error == null && grpcStatus == STATUS_OK && httpStatusCode == 200; }
     }
 
     public static class GrpcWebResponse {
         private final int httpStatusCode;
         private final int grpcStatus;
         private final String grpcMessage;
-        private final byte[] messageBytes;
+        private byte[] messageBytes;
         private final long responseTime;
-        private final String jsonString;
+        private String jsonString;
         private final Map<String, String> headers;
         private final Map<String, String> requestHeaders;
+        private List<Attempt> attempts = Collections.emptyList();
+        private String backend;
+        private byte[] rawBytes;
+        private int messageOffset = -1;
+        private int messageLength;
 
         public GrpcWebResponse(int httpStatusCode, int grpcStatus, String grpcMessage,
                                byte[] messageBytes, long responseTime, String jsonString,
@@ -162,14 +691,50 @@ public class GrpcWebClient {
             this.requestHeaders = requestHeaders;
         }
 
+        void setAttempts(List<Attempt> attempts) { this.attempts = attempts; }
+        void setBackend(String backend) { this.backend = backend; }
+        /** Sets the body as received and where the first message lies in it, or a negative offset if none. */
+        void setRawBytes(byte[] rawBytes, int messageOffset, int messageLength) {
+            this.rawBytes = rawBytes;
+            this.messageOffset = messageOffset;
+            this.messageLength = messageLength;
+        }
+
         public int getHttpStatusCode() { return httpStatusCode; }
         public int getGrpcStatus() { return grpcStatus; }
         public String getGrpcMessage() { return grpcMessage; }
-        public byte[] getMessageBytes() { return messageBytes; }
+        /** The first response message, copied out of the body on first use. */
+        public byte[] getMessageBytes() {
+            if (messageBytes == null) {
+                messageBytes = rawBytes == null || messageOffset < 0 ? new byte[0]
+                        : Arrays.copyOfRange(rawBytes, messageOffset, messageOffset + messageLength);
+            }
+            return messageBytes;
+        }
+
+        /** Parses the first response message into {@code builder} straight from the body, without copying it. */
+        public void mergeMessageInto(Message.Builder builder) throws IOException {
+            if (messageBytes != null) {
+                builder.mergeFrom(messageBytes);
+            } else if (rawBytes != null && messageOffset >= 0) {
+                builder.mergeFrom(rawBytes, messageOffset, messageLength);
+            }
+        }
+
         public long getResponseTime() { return responseTime; }
-        public String getJsonString() { return jsonString; }
+        public String getJsonString() {
+            if (jsonString == null) jsonString = new String(getMessageBytes(), StandardCharsets.UTF_8);
+            return jsonString;
+        }
         public Map<String, String> getHeaders() { return headers; }
         public Map<String, String> getRequestHeaders() { return requestHeaders; }
+        public List<Attempt> getAttempts() { return attempts; }
+        /** Label of the backend that produced this response. */
+        public String getBackend() { return backend; }
+        /** The complete response body as received: every data and trailer frame. */
+        public byte[] getRawBytes() { return rawBytes; }
+        /** Size of the response body on the wire, in bytes. */
+        public int getBodySize() { return rawBytes != null ? rawBytes.length : getMessageBytes().length; }
         public boolean isSuccessful() { return grpcStatus == 0 && httpStatusCode == 200; }
     }
 }
@@ -0,0 +1,264 @@
+package com.badru.jmeter.grpcweb.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.grpc.Status;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry and hedging configuration in the format of the gRPC service config
+ * (https://github.com/grpc/grpc/blob/master/doc/service_config.md):
+ *
+ * <pre>
+ * {
+ *   "methodConfig": [{
+ *     "name": [{"service": "example.UserService", "method": "GetUser"}],
+ *     "retryPolicy": {
+ *       "maxAttempts": 4, "initialBackoff": "0.1s", "maxBackoff": "1s",
+ *       "backoffMultiplier": 2, "retryableStatusCodes": ["UNAVAILABLE"]
+ *     }
+ *   }],
+ *   "retryThrottling": {"maxTokens": 10, "tokenRatio": 0.1}
+ * }
+ * </pre>
+ *
+ * Parsed configs are cached by their JSON text so every sampler thread using the
+ * same config shares one retry throttle (the retry budget).
+ */
+public class ServiceConfig {
+    private static final Map<String, ServiceConfig> CACHE = new ConcurrentHashMap<>();
+
+    /** Same upper bound grpc-java applies to both retry and hedging attempts. */
+    static final int MAX_ATTEMPTS_LIMIT = 5;
+
+    private final List<MethodConfig> methodConfigs;
+    private final RetryThrottle retryThrottle;
+
+    private ServiceConfig(List<MethodConfig> methodConfigs, RetryThrottle retryThrottle) {
+        this.methodConfigs = methodConfigs;
+        this.retryThrottle = retryThrottle;
+    }
+
+    /**
+     * Returns the shared config for the given JSON, or {@code null} when the text is blank.
+     *
+     * @throws IllegalArgumentException if the JSON is not a valid service config
+     */
+    public static ServiceConfig forJson(String json) {
+        if (json == null || json.trim().isEmpty()) return null;
+        return CACHE.computeIfAbsent(json.trim(), ServiceConfig::parse);
+    }
+
+    /** Drops cached configs so the next test run starts with a full retry budget. */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    static ServiceConfig parse(String json) {
+        try {
+            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+            List<MethodConfig> configs = new ArrayList<>();
+            if (root.has("methodConfig")) {
+                for (JsonElement el : root.getAsJsonArray("methodConfig")) {
+                    configs.add(parseMethodConfig(el.getAsJsonObject()));
+                }
+            }
+            RetryThrottle throttle = null;
+            if (root.has("retryThrottling")) {
+                JsonObject t = root.getAsJsonObject("retryThrottling");
+                throttle = new RetryThrottle(t.get("maxTokens").getAsInt(), t.get("tokenRatio").getAsDouble());
+            }
+            return new ServiceConfig(configs, throttle);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Invalid service config: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static MethodConfig parseMethodConfig(JsonObject obj) {
+        List<String[]> names = new ArrayList<>();
+        if (obj.has("name")) {
+            for (JsonElement el : obj.getAsJsonArray("name")) {
+                JsonObject n = el.getAsJsonObject();
+                names.add(new String[] {
+                        n.has("service") ? n.get("service").getAsString() : "",
+                        n.has("method") ? n.get("method").getAsString() : ""
+                });
+            }
+        }
+        if (obj.has("retryPolicy") && obj.has("hedgingPolicy")) {
+            throw new IllegalArgumentException("retryPolicy and hedgingPolicy are mutually exclusive");
+        }
+        RetryPolicy retry = null;
+        if (obj.has("retryPolicy")) {
+            JsonObject p = obj.getAsJsonObject("retryPolicy");
+            retry = new RetryPolicy(
+                    attempts(p),
+                    parseDurationNanos(p.get("initialBackoff").getAsString()),
+                    parseDurationNanos(p.get("maxBackoff").getAsString()),
+                    p.get("backoffMultiplier").getAsDouble(),
+                    parseStatusCodes(p.getAsJsonArray("retryableStatusCodes")));
+        }
+        HedgingPolicy hedging = null;
+        if (obj.has("hedgingPolicy")) {
+            JsonObject p = obj.getAsJsonObject("hedgingPolicy");
+            hedging = new HedgingPolicy(
+                    attempts(p),
+                    p.has("hedgingDelay") ? parseDurationNanos(p.get("hedgingDelay").getAsString()) : 0L,
+                    p.has("nonFatalStatusCodes")
+                            ? parseStatusCodes(p.getAsJsonArray("nonFatalStatusCodes"))
+                            : Collections.<Integer>emptySet());
+        }
+        return new MethodConfig(names, retry, hedging);
+    }
+
+    private static int attempts(JsonObject policy) {
+        int max = policy.get("maxAttempts").getAsInt();
+        if (max < 2) throw new IllegalArgumentException("maxAttempts must be at least 2");
+        return Math.min(max, MAX_ATTEMPTS_LIMIT);
+    }
+
+    /** Parses a protobuf JSON duration such as {@code "0.25s"}. */
+    static long parseDurationNanos(String value) {
+        String v = value.trim();
+        if (!v.endsWith("s")) throw new IllegalArgumentException("Duration must end with 's': " + value);
+        BigDecimal seconds = new BigDecimal(v.substring(0, v.length() - 1));
+        return seconds.multiply(BigDecimal.valueOf(TimeUnit.SECONDS.toNanos(1))).longValue();
+    }
+
+    /** Accepts status names ({@code "UNAVAILABLE"}) as well as numeric codes. */
+    static Set<Integer> parseStatusCodes(JsonArray array) {
+        Set<Integer> codes = new HashSet<>();
+        if (array == null) return codes;
+        for (JsonElement el : array) {
+            String raw = el.getAsString().trim();
+            if (raw.matches("\\d+")) {
+                codes.add(Integer.parseInt(raw));
+            } else {
+                codes.add(Status.Code.valueOf(raw.toUpperCase(Locale.ROOT)).value());
+            }
+        }
+        return Collections.unmodifiableSet(codes);
+    }
+
+    /**
+     * Looks up the config for a method using the service config precedence:
+     * exact service and method, then service only, then the default (empty) name.
+     */
+    public MethodConfig findMethodConfig(String fullServiceName, String methodName) {
+        MethodConfig serviceMatch = null;
+        MethodConfig defaultMatch = null;
+        for (MethodConfig mc : methodConfigs) {
+            for (String[] name : mc.names) {
+                if (name[0].isEmpty()) {
+                    if (defaultMatch == null) defaultMatch = mc;
+                } else if (name[0].equals(fullServiceName)) {
+                    if (name[1].equals(methodName)) return mc;
+                    if (name[1].isEmpty() && serviceMatch == null) serviceMatch = mc;
+                }
+            }
+        }
+        return serviceMatch != null ? serviceMatch : defaultMatch;
+    }
+
+    public RetryThrottle getRetryThrottle() { return retryThrottle; }
+
+    public static class MethodConfig {
+        private final List<String[]> names;
+        private final RetryPolicy retryPolicy;
+        private final HedgingPolicy hedgingPolicy;
+
+        MethodConfig(List<String[]> names, RetryPolicy retryPolicy, HedgingPolicy hedgingPolicy) {
+            this.names = names;
+            this.retryPolicy = retryPolicy;
+            this.hedgingPolicy = hedgingPolicy;
+        }
+
+        public RetryPolicy getRetryPolicy() { return retryPolicy; }
+        public HedgingPolicy getHedgingPolicy() { return hedgingPolicy; }
+    }
+
+    public static class RetryPolicy {
+        private final int maxAttempts;
+        private final long initialBackoffNanos;
+        private final long maxBackoffNanos;
+        private final double backoffMultiplier;
+        private final Set<Integer> retryableStatusCodes;
+
+        RetryPolicy(int maxAttempts, long initialBackoffNanos, long maxBackoffNanos,
+                    double backoffMultiplier, Set<Integer> retryableStatusCodes) {
+            this.maxAttempts = maxAttempts;
+            this.initialBackoffNanos = initialBackoffNanos;
+            this.maxBackoffNanos = maxBackoffNanos;
+            this.backoffMultiplier = backoffMultiplier;
+            this.retryableStatusCodes = retryableStatusCodes;
+        }
+
+        public int getMaxAttempts() { return maxAttempts; }
+        public boolean isRetryable(int grpcStatus) { return retryableStatusCodes.contains(grpcStatus); }
+
+        /** Upper bound of the randomized backoff before retry number {@code retry} (1-based). */
+        public long getBackoffCeilingNanos(int retry) {
+            double ceiling = initialBackoffNanos * Math.pow(backoffMultiplier, retry - 1);
+            return (long) Math.min(ceiling, maxBackoffNanos);
+        }
+    }
+
+    public static class HedgingPolicy {
+        private final int maxAttempts;
+        private final long hedgingDelayNanos;
+        private final Set<Integer> nonFatalStatusCodes;
+
+        HedgingPolicy(int maxAttempts, long hedgingDelayNanos, Set<Integer> nonFatalStatusCodes) {
+            this.maxAttempts = maxAttempts;
+            this.hedgingDelayNanos = hedgingDelayNanos;
+            this.nonFatalStatusCodes = nonFatalStatusCodes;
+        }
+
+        public int getMaxAttempts() { return maxAttempts; }
+        public long getHedgingDelayNanos() { return hedgingDelayNanos; }
+        public boolean isNonFatal(int grpcStatus) { return nonFatalStatusCodes.contains(grpcStatus); }
+    }
+
+    /**
+     * Token bucket from the service config {@code retryThrottling} section. Tokens are
+     * kept in thousandths, as the spec requires three decimal places of precision.
+     */
+    public static class RetryThrottle {
+        private final int maxTokens;
+        private final int tokenRatio;
+        private final AtomicInteger tokens;
+
+        RetryThrottle(int maxTokens, double tokenRatio) {
+            this.maxTokens = maxTokens * 1000;
+            this.tokenRatio = (int) (tokenRatio * 1000);
+            this.tokens = new AtomicInteger(this.maxTokens);
+        }
+
+        public boolean isRetryAllowed() {
+            return tokens.get() > maxTokens / 2;
+        }
+
+        public void onFailure() {
+            tokens.updateAndGet(t -> Math.max(0, t - 1000));
+        }
+
+        public void onSuccess() {
+            tokens.updateAndGet(t -> Math.min(maxTokens, t + tokenRatio));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.badru.jmeter.grpcweb.client;
+
+import okhttp3.ConnectionSpec;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TLS settings (trust store, client certificate for mTLS, protocols and cipher suites)
+ * built once into an {@link SSLContext} shared by every client with the same settings.
+ * Sharing the context shares its client session cache, so new connections from any
+ * thread resume an earlier session instead of doing a full handshake.
+ */
+public class TlsConfig {
+    private static final Map<String, TlsConfig> CACHE = new ConcurrentHashMap<>();
+
+    private static final int SESSION_CACHE_SIZE = 20000;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private final SSLSocketFactory socketFactory;
+    private final X509TrustManager trustManager;
+    private final List<ConnectionSpec> connectionSpecs;
+
+    private TlsConfig(SSLSocketFactory socketFactory, X509TrustManager trustManager,
+                      List<ConnectionSpec> connectionSpecs) {
+        this.socketFactory = socketFactory;
+        this.trustManager = trustManager;
+        this.connectionSpecs = connectionSpecs;
+    }
+
+    /**
+     * Returns the shared config for these settings; blank settings mean the platform
+     * defaults (see {@link #defaults()}). Store types are taken from the file extension:
+     * {@code .p12}/{@code .pfx} are PKCS12, anything else JKS.
+     *
+     * @throws IllegalArgumentException if a store cannot be loaded
+     */
+    public static TlsConfig forSettings(String trustStore, String trustStorePassword,
+                                        String keyStore, String keyStorePassword,
+                                        String protocols, String cipherSuites) {
+        if (isBlank(trustStore) && isBlank(keyStore) && isBlank(protocols) && isBlank(cipherSuites)) {
+            return defaults();
+        }
+        String key = String.join("\u0000", nullToEmpty(trustStore), nullToEmpty(trustStorePassword),
+                nullToEmpty(keyStore), nullToEmpty(keyStorePassword), nullToEmpty(protocols), nullToEmpty(cipherSuites));
+        return CACHE.computeIfAbsent(key,
+                k -> build(trustStore, trustStorePassword, keyStore, keyStorePassword, protocols, cipherSuites));
+    }
+
+    /**
+     * The platform trust store and protocols, in one context shared by every client without
+     * TLS settings, so those clients resume each other's sessions too.
+     */
+    public static TlsConfig defaults() {
+        return CACHE.computeIfAbsent("", k -> build(null, null, null, null, null, null));
+    }
+
+    private static TlsConfig build(String trustStore, String trustStorePassword,
+                                   String keyStore, String keyStorePassword,
+                                   String protocols, String cipherSuites) {
+        try {
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(isBlank(trustStore) ? null : loadStore(trustStore, trustStorePassword));
+            X509TrustManager trustManager = null;
+            for (TrustManager tm : tmf.getTrustManagers()) {
+                if (tm instanceof X509TrustManager) {
+                    trustManager = (X509TrustManager) tm;
+                    break;
+                }
+            }
+            if (trustManager == null) throw new IllegalStateException("No X509 trust manager available");
+
+            KeyManager[] keyManagers = null;
+            if (!isBlank(keyStore)) {
+                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                kmf.init(loadStore(keyStore, keyStorePassword), passwordChars(keyStorePassword));
+                keyManagers = kmf.getKeyManagers();
+            }
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers, new TrustManager[] {trustManager}, null);
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+
+            ConnectionSpec.Builder spec = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS);
+            List<String> protocolList = splitList(protocols);
+            if (!protocolList.isEmpty()) spec.tlsVersions(protocolList.toArray(new String[0]));
+            List<String> cipherList = splitList(cipherSuites);
+            if (!cipherList.isEmpty()) spec.cipherSuites(cipherList.toArray(new String[0]));
+
+            return new TlsConfig(context.getSocketFactory(), trustManager,
+                    Collections.unmodifiableList(Arrays.asList(spec.build(), ConnectionSpec.CLEARTEXT)));
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Invalid TLS configuration: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static KeyStore loadStore(String path, String password) throws Exception {
+        String lower = path.toLowerCase(Locale.ROOT);
+        KeyStore store = KeyStore.getInstance(lower.endsWith(".p12") || lower.endsWith(".pfx") ? "PKCS12" : "JKS");
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            store.load(in, passwordChars(password));
+        }
+        return store;
+    }
+
+    private static char[] passwordChars(String password) {
+        return password == null ? new char[0] : password.toCharArray();
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        if (value == null) return items;
+        for (String item : value.split("[,\\s]+")) {
+            if (!item.isEmpty()) items.add(item);
+        }
+        return items;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    public SSLSocketFactory getSocketFactory() { return socketFactory; }
+    public X509TrustManager getTrustManager() { return trustManager; }
+    public List<ConnectionSpec> getConnectionSpecs() { return connectionSpecs; }
+}
@@ -0,0 +1,274 @@
+package com.badru.jmeter.grpcweb.gui;
+
+import com.badru.jmeter.grpcweb.preprocessor.AuthTokenPreProcessor;
+import org.apache.jmeter.gui.util.HorizontalPanel;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.processor.gui.AbstractPreProcessorGui;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import java.awt.*;
+
+public class AuthTokenPreProcessorGui extends AbstractPreProcessorGui {
+    private JTextField protoFilePathField;
+    private JTextField serverUrlField;
+    private JTextField serviceNameField;
+    private JTextField methodNameField;
+    private JTextArea requestJsonArea;
+    private JTextField timeoutField;
+    private JTextField tokenFieldField;
+    private JTextField expiresInFieldField;
+    private JTextField ttlField;
+    private JTextField refreshAheadField;
+    private JComboBox<String> cacheScopeComboBox;
+    private JTextField headerNameField;
+    private JTextField headerPrefixField;
+    private JTextField tlsTrustStoreField;
+    private JPasswordField tlsTrustStorePasswordField;
+    private JTextField tlsKeyStoreField;
+    private JPasswordField tlsKeyStorePasswordField;
+    private JTextField tlsProtocolsField;
+    private JTextField tlsCipherSuitesField;
+
+    public AuthTokenPreProcessorGui() {
+        super();
+        init();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return "gRPC-Web Auth Token";
+    }
+
+    @Override
+    public String getLabelResource() {
+        return null; // We use getStaticLabel() instead
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        AuthTokenPreProcessor preProcessor = new AuthTokenPreProcessor();
+        modifyTestElement(preProcessor);
+        return preProcessor;
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        super.configureTestElement(element);
+        if (element instanceof AuthTokenPreProcessor) {
+            AuthTokenPreProcessor pre = AuthTokenPreProcessor.class.cast(element);
+            pre.setProtoFilePath(protoFilePathField.getText().trim());
+            pre.setServerUrl(serverUrlField.getText().trim());
+            pre.setServiceName(serviceNameField.getText().trim());
+            pre.setMethodName(methodNameField.getText().trim());
+            pre.setRequestJson(requestJsonArea.getText());
+            pre.setTimeoutSeconds(parseIntOr(timeoutField.getText(), 30));
+            pre.setTokenField(tokenFieldField.getText().trim());
+            pre.setExpiresInField(expiresInFieldField.getText().trim());
+            pre.setTtlSeconds(parseIntOr(ttlField.getText(), 300));
+            pre.setRefreshAheadSeconds(parseIntOr(refreshAheadField.getText(), 30));
+            pre.setCacheScope((String) cacheScopeComboBox.getSelectedItem());
+            pre.setHeaderName(headerNameField.getText().trim());
+            pre.setHeaderPrefix(headerPrefixField.getText().trim());
+            pre.setTlsTrustStore(tlsTrustStoreField.getText().trim());
+            pre.setTlsTrustStorePassword(new String(tlsTrustStorePasswordField.getPassword()));
+            pre.setTlsKeyStore(tlsKeyStoreField.getText().trim());
+            pre.setTlsKeyStorePassword(new String(tlsKeyStorePasswordField.getPassword()));
+            pre.setTlsProtocols(tlsProtocolsField.getText().trim());
+            pre.setTlsCipherSuites(tlsCipherSuitesField.getText().trim());
+        }
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        if (element instanceof AuthTokenPreProcessor) {
+            AuthTokenPreProcessor pre = AuthTokenPreProcessor.class.cast(element);
+            protoFilePathField.setText(pre.getProtoFilePath());
+            serverUrlField.setText(pre.getServerUrl());
+            serviceNameField.setText(pre.getServiceName());
+            methodNameField.setText(pre.getMethodName());
+            requestJsonArea.setText(pre.getRequestJson());
+            timeoutField.setText(String.valueOf(pre.getTimeoutSeconds()));
+            tokenFieldField.setText(pre.getTokenField());
+            expiresInFieldField.setText(pre.getExpiresInField());
+            ttlField.setText(String.valueOf(pre.getTtlSeconds()));
+            refreshAheadField.setText(String.valueOf(pre.getRefreshAheadSeconds()));
+            cacheScopeComboBox.setSelectedItem(pre.getCacheScope());
+            headerNameField.setText(pre.getHeaderName());
+            headerPrefixField.setText(pre.getHeaderPrefix());
+            tlsTrustStoreField.setText(pre.getTlsTrustStore());
+            tlsTrustStorePasswordField.setText(pre.getTlsTrustStorePassword());
+            tlsKeyStoreField.setText(pre.getTlsKeyStore());
+            tlsKeyStorePasswordField.setText(pre.getTlsKeyStorePassword());
+            tlsProtocolsField.setText(pre.getTlsProtocols());
+            tlsCipherSuitesField.setText(pre.getTlsCipherSuites());
+        }
+    }
+
+    @Override
+    public void clearGui() {
+        super.clearGui();
+        protoFilePathField.setText("");
+        serverUrlField.setText("");
+        serviceNameField.setText("");
+        methodNameField.setText("");
+        requestJsonArea.setText("{\n  \n}");
+        timeoutField.setText("30");
+        tokenFieldField.setText("token");
+        expiresInFieldField.setText("");
+        ttlField.setText("300");
+        refreshAheadField.setText("30");
+        cacheScopeComboBox.setSelectedItem(AuthTokenPreProcessor.SCOPE_THREAD);
+        headerNameField.setText("Authorization");
+        headerPrefixField.setText("Bearer");
+        tlsTrustStoreField.setText("");
+        tlsTrustStorePasswordField.setText("");
+        tlsKeyStoreField.setText("");
+        tlsKeyStorePasswordField.setText("");
+        tlsProtocolsField.setText("");
+        tlsCipherSuitesField.setText("");
+    }
+
+    private void init() {
+        setLayout(new BorderLayout(0, 5));
+        setBorder(makeBorder());
+        add(makeTitlePanel(), BorderLayout.NORTH);
+
+        VerticalPanel mainPanel = new VerticalPanel();
+        mainPanel.add(createLoginPanel());
+        mainPanel.add(createTlsPanel());
+        mainPanel.add(createTokenPanel());
+        add(mainPanel, BorderLayout.CENTER);
+    }
+
+    private JPanel createLoginPanel() {
+        VerticalPanel panel = new VerticalPanel();
+        panel.setBorder(createTitledBorder("Login Call"));
+
+        JPanel protoPanel = new HorizontalPanel();
+        protoPanel.add(new JLabel("Proto File:"));
+        protoFilePathField = new JTextField(40);
+        protoPanel.add(protoFilePathField);
+        panel.add(protoPanel);
+
+        JPanel serverPanel = new HorizontalPanel();
+        serverPanel.add(new JLabel("Server URL:"));
+        serverUrlField = new JTextField(30);
+        serverPanel.add(serverUrlField);
+        serverPanel.add(new JLabel("Timeout (seconds):"));
+        timeoutField = new JTextField("30", 5);
+        serverPanel.add(timeoutField);
+        panel.add(serverPanel);
+
+        JPanel methodPanel = new HorizontalPanel();
+        methodPanel.add(new JLabel("Service:"));
+        serviceNameField = new JTextField(20);
+        methodPanel.add(serviceNameField);
+        methodPanel.add(new JLabel("Method:"));
+        methodNameField = new JTextField(15);
+        methodPanel.add(methodNameField);
+        panel.add(methodPanel);
+
+        panel.add(new JLabel("Request JSON (threads sending the same request share a token in per-user scope):"));
+        requestJsonArea = new JTextArea(6, 50);
+        requestJsonArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        requestJsonArea.setText("{\n  \n}");
+        panel.add(new JScrollPane(requestJsonArea));
+
+        return panel;
+    }
+
+    private JPanel createTlsPanel() {
+        VerticalPanel panel = new VerticalPanel();
+        panel.setBorder(createTitledBorder("Login TLS (leave empty for defaults)"));
+
+        JPanel trustPanel = new HorizontalPanel();
+        trustPanel.add(new JLabel("Trust store (.jks/.p12):"));
+        tlsTrustStoreField = new JTextField(25);
+        trustPanel.add(tlsTrustStoreField);
+        trustPanel.add(new JLabel("Password:"));
+        tlsTrustStorePasswordField = new JPasswordField(10);
+        tlsTrustStorePasswordField.setToolTipText(GrpcWebSamplerGui.STORE_PASSWORD_TIP);
+        trustPanel.add(tlsTrustStorePasswordField);
+        panel.add(trustPanel);
+
+        JPanel keyPanel = new HorizontalPanel();
+        keyPanel.add(new JLabel("Client certificate key store (mTLS):"));
+        tlsKeyStoreField = new JTextField(25);
+        keyPanel.add(tlsKeyStoreField);
+        keyPanel.add(new JLabel("Password:"));
+        tlsKeyStorePasswordField = new JPasswordField(10);
+        tlsKeyStorePasswordField.setToolTipText(GrpcWebSamplerGui.STORE_PASSWORD_TIP);
+        keyPanel.add(tlsKeyStorePasswordField);
+        panel.add(keyPanel);
+
+        JPanel specPanel = new HorizontalPanel();
+        specPanel.add(new JLabel("Protocols:"));
+        tlsProtocolsField = new JTextField(12);
+        tlsProtocolsField.setToolTipText("e.g. TLSv1.3, TLSv1.2");
+        specPanel.add(tlsProtocolsField);
+        specPanel.add(new JLabel("Cipher suites:"));
+        tlsCipherSuitesField = new JTextField(25);
+        specPanel.add(tlsCipherSuitesField);
+        panel.add(specPanel);
+
+        return panel;
+    }
+
+    private JPanel createTokenPanel() {
+        VerticalPanel panel = new VerticalPanel();
+        panel.setBorder(createTitledBorder("Token"));
+
+        JPanel fieldPanel = new HorizontalPanel();
+        fieldPanel.add(new JLabel("Token field:"));
+        tokenFieldField = new JTextField("token", 15);
+        tokenFieldField.setToolTipText("Field of the login response holding the token; use dots for nested fields");
+        fieldPanel.add(tokenFieldField);
+        fieldPanel.add(new JLabel("Expires-in field (seconds):"));
+        expiresInFieldField = new JTextField(12);
+        expiresInFieldField.setToolTipText("Optional; when set and positive, overrides the TTL below");
+        fieldPanel.add(expiresInFieldField);
+        panel.add(fieldPanel);
+
+        JPanel cachePanel = new HorizontalPanel();
+        cachePanel.add(new JLabel("Cache per:"));
+        cacheScopeComboBox = new JComboBox<>(new String[] {
+                AuthTokenPreProcessor.SCOPE_THREAD, AuthTokenPreProcessor.SCOPE_USER});
+        cachePanel.add(cacheScopeComboBox);
+        cachePanel.add(new JLabel("TTL (seconds):"));
+        ttlField = new JTextField("300", 6);
+        cachePanel.add(ttlField);
+        cachePanel.add(new JLabel("Refresh ahead (seconds):"));
+        refreshAheadField = new JTextField("30", 5);
+        refreshAheadField.setToolTipText("A new token is fetched in the background this long before the old one expires");
+        cachePanel.add(refreshAheadField);
+        panel.add(cachePanel);
+
+        JPanel headerPanel = new HorizontalPanel();
+        headerPanel.add(new JLabel("Header name:"));
+        headerNameField = new JTextField("Authorization", 15);
+        headerPanel.add(headerNameField);
+        headerPanel.add(new JLabel("Value prefix:"));
+        headerPrefixField = new JTextField("Bearer", 8);
+        headerPanel.add(headerPrefixField);
+        panel.add(headerPanel);
+
+        return panel;
+    }
+
+    private Border createTitledBorder(String title) {
+        Border margin = BorderFactory.createEmptyBorder(10, 10, 5, 10);
+        Border titled = BorderFactory.createTitledBorder(title);
+        return BorderFactory.createCompoundBorder(titled, margin);
+    }
+
+    private static int parseIntOr(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.badru.jmeter.grpcweb.gui;
 
 import com.badru.jmeter.grpcweb.sampler.GrpcWebSampler;
+import com.badru.jmeter.grpcweb.util.JsonTemplateGenerator;
 import com.badru.jmeter.grpcweb.util.ProtoFileParser;
+import com.google.protobuf.Descriptors;
 import org.apache.jmeter.gui.util.HorizontalPanel;
 import org.apache.jmeter.gui.util.VerticalPanel;
 import org.apache.jmeter.samplers.gui.AbstractSamplerGui;
@@ -13,15 +15,23 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 
 public class GrpcWebSamplerGui extends AbstractSamplerGui {
     private static final Logger log = LoggerFactory.getLogger(GrpcWebSamplerGui.class);
+    static final String STORE_PASSWORD_TIP =
+            "Saved as plain text in the .jmx; enter a property reference such as ${__P(keystore.password)} to keep it out";
     
     private JTextField protoFilePathField;
     private JButton browseButton;
@@ -33,8 +43,55 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
     private JCheckBox useTextFormatCheckBox;
     private JTextArea customHeadersArea;
     private JCheckBox useRelativeCheck;
+    private JCheckBox embedDescriptorsCheck;
+    private JTextArea serviceConfigArea;
+    private JCheckBox requireGrpcStatusCheckBox;
+    private JComboBox<String> rateModeComboBox;
+    private JTextField ratePerSecondField;
+    private JTextField rateStepIncrementField;
+    private JTextField rateStepSecondsField;
+    private JCheckBox rateCoCorrectionCheckBox;
+    private JCheckBox warmUpCheckBox;
+    private JComboBox<String> lbPolicyComboBox;
+    private JCheckBox lbResolveAllCheckBox;
+    private JCheckBox lbLabelByBackendCheckBox;
+    private JTextField dnsTtlField;
+    private JTextField tlsTrustStoreField;
+    private JPasswordField tlsTrustStorePasswordField;
+    private JTextField tlsKeyStoreField;
+    private JPasswordField tlsKeyStorePasswordField;
+    private JTextField tlsProtocolsField;
+    private JTextField tlsCipherSuitesField;
+    private JTextField warmUpConnectionsField;
+    private JTextField warmUpCallsField;
+    private JCheckBox sharedConnectionsCheckBox;
+    private JTextField recordFileField;
+    private JTextField recordBufferField;
+    private JComboBox<String> responseModeComboBox;
+    private JTextField digestPrefixField;
+    private JTextField digestFieldsField;
+    private JTextField expectedDigestField;
+    private JTextField replayFileField;
+    private JTextField replaySpeedField;
+    private JCheckBox replayLoopCheckBox;
+    private JCheckBox compiledCodecCheckBox;
+    
+    private JTextField methodFilterField;
+    private JProgressBar loadProgressBar;
+    private JLabel loadStatusLabel;
+    private JButton cancelLoadButton;
     
     private ProtoFileParser protoParser;
+    // Proto loading runs off the EDT; results of superseded loads are ignored
+    private ProtoLoadWorker loadWorker;
+    private int loadGeneration;
+    // Selection saved in the element while its proto is still loading
+    private String pendingService;
+    private String pendingMethod;
+    // Descriptors to save in the element: those it was loaded with, until another proto is parsed
+    private String embeddedDescriptorSet;
+    private String embeddedDescriptorHash;
+    private ProtoFileParser embeddedParser;
     
     public GrpcWebSamplerGui() {
         super();
@@ -65,10 +122,17 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
             GrpcWebSampler sampler = (GrpcWebSampler) element;
             sampler.setProtoFilePath(protoFilePathField.getText());
             sampler.setServerUrl(serverUrlField.getText());
-            sampler.setServiceName((String) serviceComboBox.getSelectedItem());
-            sampler.setMethodName((String) methodComboBox.getSelectedItem());
+            String service = (String) serviceComboBox.getSelectedItem();
+            String method = (String) methodComboBox.getSelectedItem();
+            sampler.setServiceName(service != null ? service : pendingService);
+            sampler.setMethodName(method != null ? method : pendingMethod);
             sampler.setRequestJson(requestJsonArea.getText());
             sampler.setUseRelativePath(useRelativeCheck.isSelected());
+            sampler.setEmbedDescriptors(embedDescriptorsCheck.isSelected());
+            updateEmbeddedDescriptors();
+            boolean embed = embedDescriptorsCheck.isSelected() && embeddedDescriptorSet != null;
+            sampler.setProtoDescriptorSet(embed ? embeddedDescriptorSet : "");
+            sampler.setProtoDescriptorHash(embed ? embeddedDescriptorHash : "");
             
             // Safe timeout parsing
             try {
@@ -80,6 +144,38 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
             
             sampler.setUseTextFormat(useTextFormatCheckBox.isSelected());
             sampler.setCustomHeaders(customHeadersArea.getText());
+            sampler.setServiceConfig(serviceConfigArea.getText());
+            sampler.setRequireGrpcStatus(requireGrpcStatusCheckBox.isSelected());
+            sampler.setRateMode((String) rateModeComboBox.getSelectedItem());
+            sampler.setRatePerSecond(ratePerSecondField.getText().trim());
+            sampler.setRateStepIncrement(rateStepIncrementField.getText().trim());
+            sampler.setRateStepSeconds(rateStepSecondsField.getText().trim());
+            sampler.setRateCoCorrection(rateCoCorrectionCheckBox.isSelected());
+            sampler.setWarmUpEnabled(warmUpCheckBox.isSelected());
+            sampler.setWarmUpConnections(parseIntOrZero(warmUpConnectionsField.getText()));
+            sampler.setWarmUpCalls(parseIntOrZero(warmUpCallsField.getText()));
+            sampler.setSharedConnections(sharedConnectionsCheckBox.isSelected());
+            sampler.setLbPolicy((String) lbPolicyComboBox.getSelectedItem());
+            sampler.setLbResolveAll(lbResolveAllCheckBox.isSelected());
+            sampler.setLbLabelByBackend(lbLabelByBackendCheckBox.isSelected());
+            sampler.setDnsTtlSeconds(parseIntOrZero(dnsTtlField.getText()));
+            sampler.setTlsTrustStore(tlsTrustStoreField.getText().trim());
+            sampler.setTlsTrustStorePassword(new String(tlsTrustStorePasswordField.getPassword()));
+            sampler.setTlsKeyStore(tlsKeyStoreField.getText().trim());
+            sampler.setTlsKeyStorePassword(new String(tlsKeyStorePasswordField.getPassword()));
+            sampler.setTlsProtocols(tlsProtocolsField.getText().trim());
+            sampler.setTlsCipherSuites(tlsCipherSuitesField.getText().trim());
+            sampler.setRecordFile(recordFileField.getText().trim());
+            int recordBuffer = parseIntOrZero(recordBufferField.getText());
+            sampler.setRecordBufferSize(recordBuffer > 0 ? recordBuffer : 8192);
+            sampler.setResponseMode((String) responseModeComboBox.getSelectedItem());
+            sampler.setDigestPrefixChars(parseIntOrZero(digestPrefixField.getText()));
+            sampler.setDigestFields(digestFieldsField.getText().trim());
+            sampler.setExpectedDigest(expectedDigestField.getText().trim());
+            sampler.setReplayFile(replayFileField.getText().trim());
+            sampler.setReplaySpeed(replaySpeedField.getText().trim());
+            sampler.setReplayLoop(replayLoopCheckBox.isSelected());
+            sampler.setCompiledJsonCodec(compiledCodecCheckBox.isSelected());
         }
     }
     
@@ -96,37 +192,160 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
             timeoutField.setText(String.valueOf(sampler.getTimeoutSeconds()));
             useTextFormatCheckBox.setSelected(sampler.getUseTextFormat());
             customHeadersArea.setText(sampler.getCustomHeaders());
+            serviceConfigArea.setText(sampler.getServiceConfig());
+            requireGrpcStatusCheckBox.setSelected(sampler.getRequireGrpcStatus());
+            String rateMode = sampler.getRateMode();
+            rateModeComboBox.setSelectedItem(rateMode == null || rateMode.isEmpty() ? "none" : rateMode);
+            ratePerSecondField.setText(sampler.getPropertyAsString(GrpcWebSampler.RATE_PER_SECOND));
+            rateStepIncrementField.setText(sampler.getPropertyAsString(GrpcWebSampler.RATE_STEP_INCREMENT));
+            rateStepSecondsField.setText(sampler.getPropertyAsString(GrpcWebSampler.RATE_STEP_SECONDS));
+            rateCoCorrectionCheckBox.setSelected(sampler.getRateCoCorrection());
+            warmUpCheckBox.setSelected(sampler.getWarmUpEnabled());
+            warmUpConnectionsField.setText(String.valueOf(sampler.getWarmUpConnections()));
+            warmUpCallsField.setText(String.valueOf(sampler.getWarmUpCalls()));
+            sharedConnectionsCheckBox.setSelected(sampler.getSharedConnections());
+            String lbPolicy = sampler.getLbPolicy();
+            lbPolicyComboBox.setSelectedItem(lbPolicy == null || lbPolicy.isEmpty() ? "round_robin" : lbPolicy);
+            lbResolveAllCheckBox.setSelected(sampler.getLbResolveAll());
+            lbLabelByBackendCheckBox.setSelected(sampler.getLbLabelByBackend());
+            dnsTtlField.setText(String.valueOf(sampler.getDnsTtlSeconds()));
+            tlsTrustStoreField.setText(sampler.getTlsTrustStore());
+            tlsTrustStorePasswordField.setText(sampler.getTlsTrustStorePassword());
+            tlsKeyStoreField.setText(sampler.getTlsKeyStore());
+            tlsKeyStorePasswordField.setText(sampler.getTlsKeyStorePassword());
+            tlsProtocolsField.setText(sampler.getTlsProtocols());
+            tlsCipherSuitesField.setText(sampler.getTlsCipherSuites());
+            recordFileField.setText(sampler.getRecordFile());
+            recordBufferField.setText(String.valueOf(sampler.getRecordBufferSize()));
+            responseModeComboBox.setSelectedItem(sampler.getResponseMode());
+            digestPrefixField.setText(String.valueOf(sampler.getDigestPrefixChars()));
+            digestFieldsField.setText(sampler.getDigestFields());
+            expectedDigestField.setText(sampler.getExpectedDigest());
+            replayFileField.setText(sampler.getReplayFile());
+            replaySpeedField.setText(sampler.getPropertyAsString(GrpcWebSampler.REPLAY_SPEED));
+            replayLoopCheckBox.setSelected(sampler.getReplayLoop());
+            compiledCodecCheckBox.setSelected(sampler.getCompiledJsonCodec());
             // set useRelativeCheck here
             useRelativeCheck.setSelected(sampler.getUseRelativePath());
+            embedDescriptorsCheck.setSelected(sampler.getEmbedDescriptors());
+            String embedded = sampler.getProtoDescriptorSet();
+            embeddedDescriptorSet = embedded != null && !embedded.isEmpty() ? embedded : null;
+            embeddedDescriptorHash = sampler.getProtoDescriptorHash();
+            embeddedParser = null;
 
             // Restore parsed services if available - FIXES PERSISTENCE!
+            // Cached protos are shown immediately; others are compiled in the background
+            methodFilterField.setText("");
+            protoParser = null;
+            serviceComboBox.removeAllItems();
+            methodComboBox.removeAllItems();
             String protoPath = sampler.getProtoFilePath();
             if (protoPath != null && !protoPath.trim().isEmpty()) {
-                ProtoFileParser parser = GrpcWebSampler.getProtoParserForPath(protoPath);
-                if (parser != null) {
-                    // Restore service dropdown
-                    serviceComboBox.removeAllItems();
-                    for (String service : parser.getServices()) {
-                        serviceComboBox.addItem(service);
+                ProtoFileParser parser = GrpcWebSampler.getCachedProtoParser(protoPath);
+                if (parser == null && embeddedDescriptorSet != null) {
+                    // Decoding embedded descriptors is cheap and needs no protoc
+                    try {
+                        parser = GrpcWebSampler.getProtoParserForDescriptorSet(
+                                embeddedDescriptorHash, embeddedDescriptorSet, protoPath);
+                    } catch (Exception ex) {
+                        log.warn("Embedded proto descriptors could not be loaded, compiling {}", protoPath, ex);
                     }
-                    
-                    // Set selected service
-                    serviceComboBox.setSelectedItem(sampler.getServiceName());
-                    
-                    // Restore method dropdown
-                    String selectedService = sampler.getServiceName();
-                    if (selectedService != null) {
-                        methodComboBox.removeAllItems();
-                        for (String method : parser.getMethodsForService(selectedService)) {
-                            methodComboBox.addItem(method);
-                        }
-                        methodComboBox.setSelectedItem(sampler.getMethodName());
-                    }
-                    
-                    this.protoParser = parser;
                 }
+                if (parser != null) {
+                    loadGeneration++;
+                    setLoading(false, " ");
+                    applyParser(parser, sampler.getServiceName(), sampler.getMethodName());
+                } else {
+                    loadProtoAsync(protoPath, sampler.getServiceName(), sampler.getMethodName(), false);
+                }
+            } else {
+                loadGeneration++;
+                setLoading(false, " ");
+                pendingService = null;
+                pendingMethod = null;
+            }
+        }
+    }
+    
+    /** Starts compiling a proto on a background thread; the result is applied on the EDT. */
+    private void loadProtoAsync(String protoPath, String service, String method, boolean interactive) {
+        int generation = ++loadGeneration;
+        pendingService = service;
+        pendingMethod = method;
+        setLoading(true, "Loading " + new File(protoPath).getName() + "...");
+        loadWorker = new ProtoLoadWorker(protoPath, generation, interactive);
+        loadWorker.execute();
+    }
+    
+    /** Re-encodes the descriptors to embed when a different proto has been loaded. */
+    private void updateEmbeddedDescriptors() {
+        if (protoParser == null || protoParser == embeddedParser || protoParser.getDescriptorSetBytes() == null) {
+            return;
+        }
+        byte[] setBytes = protoParser.getDescriptorSetBytes();
+        embeddedParser = protoParser;
+        embeddedDescriptorSet = Base64.getEncoder().encodeToString(setBytes);
+        embeddedDescriptorHash = ProtoFileParser.hashDescriptorSet(setBytes);
+    }
+    
+    /**
+     * Embedding needs descriptors compiled by protoc. If there are none (protoc missing or
+     * failing), say so and untick the box rather than silently saving nothing.
+     */
+    private void warnIfNothingToEmbed() {
+        if (!embedDescriptorsCheck.isSelected() || protoParser == null
+                || protoParser.getDescriptorSetBytes() != null || embeddedDescriptorSet != null) {
+            return;
+        }
+        embedDescriptorsCheck.setSelected(false);
+        JOptionPane.showMessageDialog(this,
+                "The proto could not be compiled with protoc, so there are no descriptors to embed.\n\n"
+                + "Check that protoc is installed and the proto compiles, then click Parse again.",
+                "Nothing to embed", JOptionPane.WARNING_MESSAGE);
+    }
+
+    private void setLoading(boolean loading, String status) {
+        loadProgressBar.setVisible(loading);
+        cancelLoadButton.setVisible(loading);
+        loadStatusLabel.setText(status);
+    }
+    
+    private void applyParser(ProtoFileParser parser, String service, String method) {
+        protoParser = parser;
+        pendingService = null;
+        pendingMethod = null;
+        applyFilter(service, method);
+    }
+    
+    /** Refills the service and method lists with the entries matching the filter text. */
+    private void applyFilter(String keepService, String keepMethod) {
+        if (protoParser == null) return;
+        String filter = methodFilterField.getText().trim().toLowerCase(Locale.ROOT);
+        serviceComboBox.removeAllItems();
+        for (String service : new TreeSet<>(protoParser.getServices())) {
+            if (matches(service, filter) || protoParser.getMethodsForService(service).stream()
+                    .anyMatch(m -> matches(m, filter))) {
+                serviceComboBox.addItem(service);
             }
         }
+        if (keepService != null) serviceComboBox.setSelectedItem(keepService);
+        refreshMethods(keepMethod);
+    }
+    
+    private void refreshMethods(String keepMethod) {
+        methodComboBox.removeAllItems();
+        String service = (String) serviceComboBox.getSelectedItem();
+        if (service == null || protoParser == null) return;
+        String filter = methodFilterField.getText().trim().toLowerCase(Locale.ROOT);
+        boolean serviceMatches = matches(service, filter);
+        for (String method : protoParser.getMethodsForService(service)) {
+            if (serviceMatches || matches(method, filter)) methodComboBox.addItem(method);
+        }
+        if (keepMethod != null) methodComboBox.setSelectedItem(keepMethod);
+    }
+    
+    private static boolean matches(String name, String filter) {
+        return filter.isEmpty() || name.toLowerCase(Locale.ROOT).contains(filter);
     }
     
     @Override
@@ -136,10 +355,59 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         serverUrlField.setText("");
         serviceComboBox.removeAllItems();
         methodComboBox.removeAllItems();
+        methodFilterField.setText("");
+        protoParser = null;
+        pendingService = null;
+        pendingMethod = null;
+        embeddedDescriptorSet = null;
+        embeddedDescriptorHash = null;
+        embeddedParser = null;
+        embedDescriptorsCheck.setSelected(false);
+        loadGeneration++;
+        setLoading(false, " ");
         requestJsonArea.setText("");
         timeoutField.setText("30");
         useTextFormatCheckBox.setSelected(false);
         customHeadersArea.setText("");
+        serviceConfigArea.setText("");
+        requireGrpcStatusCheckBox.setSelected(false);
+        rateModeComboBox.setSelectedItem("none");
+        ratePerSecondField.setText("");
+        rateStepIncrementField.setText("");
+        rateStepSecondsField.setText("");
+        rateCoCorrectionCheckBox.setSelected(false);
+        warmUpCheckBox.setSelected(false);
+        warmUpConnectionsField.setText("0");
+        warmUpCallsField.setText("0");
+        sharedConnectionsCheckBox.setSelected(false);
+        lbPolicyComboBox.setSelectedItem("round_robin");
+        lbResolveAllCheckBox.setSelected(false);
+        lbLabelByBackendCheckBox.setSelected(false);
+        dnsTtlField.setText("30");
+        tlsTrustStoreField.setText("");
+        tlsTrustStorePasswordField.setText("");
+        tlsKeyStoreField.setText("");
+        tlsKeyStorePasswordField.setText("");
+        tlsProtocolsField.setText("");
+        tlsCipherSuitesField.setText("");
+        recordFileField.setText("");
+        recordBufferField.setText("8192");
+        responseModeComboBox.setSelectedItem(GrpcWebSampler.RESPONSE_MODE_FULL);
+        digestPrefixField.setText("1024");
+        digestFieldsField.setText("");
+        expectedDigestField.setText("");
+        replayFileField.setText("");
+        replaySpeedField.setText("");
+        replayLoopCheckBox.setSelected(false);
+        compiledCodecCheckBox.setSelected(false);
+    }
+    
+    private static int parseIntOrZero(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
     
     private void init() {
@@ -159,6 +427,12 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         // Server configuration section
         mainPanel.add(createServerPanel());
         
+        // TLS / mTLS
+        mainPanel.add(createTlsPanel());
+        
+        // Open-model arrival rate
+        mainPanel.add(createRatePanel());
+        
         // Service and method selection
         mainPanel.add(createServicePanel());
         
@@ -186,6 +460,21 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         JButton parseButton = new JButton("Parse");
         parseButton.addActionListener(new ParseAction());
         panel.add(parseButton);
+        
+        loadProgressBar = new JProgressBar();
+        loadProgressBar.setIndeterminate(true);
+        loadProgressBar.setVisible(false);
+        panel.add(loadProgressBar);
+        
+        cancelLoadButton = new JButton("Cancel");
+        cancelLoadButton.setVisible(false);
+        cancelLoadButton.addActionListener(e -> {
+            if (loadWorker != null) loadWorker.cancel(true);
+        });
+        panel.add(cancelLoadButton);
+        
+        loadStatusLabel = new JLabel(" ");
+        panel.add(loadStatusLabel);
 
         useRelativeCheck = new JCheckBox("Use relative path");
         panel.add(useRelativeCheck);
@@ -211,20 +500,104 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
             }
         });
         
+        embedDescriptorsCheck = new JCheckBox("Embed compiled descriptors");
+        embedDescriptorsCheck.setToolTipText("Save the compiled proto in the test plan so remote engines need neither the .proto files nor protoc");
+        embedDescriptorsCheck.addActionListener(e -> warnIfNothingToEmbed());
+        panel.add(embedDescriptorsCheck);
+        
         return panel;
     }
     
     private JPanel createServerPanel() {
-        JPanel panel = new HorizontalPanel();
+        VerticalPanel panel = new VerticalPanel();
         panel.setBorder(createTitledBorder("Server Configuration"));
         
-        panel.add(new JLabel("Server URL:"));
+        JPanel urlPanel = new HorizontalPanel();
+        urlPanel.add(new JLabel("Server URL(s):"));
         serverUrlField = new JTextField("http://localhost:8080", 25);
-        panel.add(serverUrlField);
+        serverUrlField.setToolTipText("One URL, or several separated by commas to balance calls across them");
+        urlPanel.add(serverUrlField);
         
-        panel.add(new JLabel("Timeout (seconds):"));
+        urlPanel.add(new JLabel("Timeout (seconds):"));
         timeoutField = new JTextField("30", 5);
-        panel.add(timeoutField);
+        urlPanel.add(timeoutField);
+        panel.add(urlPanel);
+        
+        JPanel lbPanel = new HorizontalPanel();
+        lbPanel.add(new JLabel("Balancing:"));
+        lbPolicyComboBox = new JComboBox<>(new String[] {"round_robin", "least_in_flight", "power_of_two"});
+        lbPanel.add(lbPolicyComboBox);
+        lbResolveAllCheckBox = new JCheckBox("Use every DNS address as a backend");
+        lbPanel.add(lbResolveAllCheckBox);
+        lbPanel.add(new JLabel("DNS TTL (seconds):"));
+        dnsTtlField = new JTextField("30", 4);
+        lbPanel.add(dnsTtlField);
+        lbLabelByBackendCheckBox = new JCheckBox("Label samples by backend");
+        lbPanel.add(lbLabelByBackendCheckBox);
+        panel.add(lbPanel);
+        
+        return panel;
+    }
+    
+    private JPanel createTlsPanel() {
+        VerticalPanel panel = new VerticalPanel();
+        panel.setBorder(createTitledBorder("TLS (shared by all threads; leave empty for defaults)"));
+        
+        JPanel trustPanel = new HorizontalPanel();
+        trustPanel.add(new JLabel("Trust store (.jks/.p12):"));
+        tlsTrustStoreField = new JTextField(25);
+        trustPanel.add(tlsTrustStoreField);
+        trustPanel.add(new JLabel("Password:"));
+        tlsTrustStorePasswordField = new JPasswordField(10);
+        tlsTrustStorePasswordField.setToolTipText(STORE_PASSWORD_TIP);
+        trustPanel.add(tlsTrustStorePasswordField);
+        panel.add(trustPanel);
+        
+        JPanel keyPanel = new HorizontalPanel();
+        keyPanel.add(new JLabel("Client certificate key store (mTLS):"));
+        tlsKeyStoreField = new JTextField(25);
+        keyPanel.add(tlsKeyStoreField);
+        keyPanel.add(new JLabel("Password:"));
+        tlsKeyStorePasswordField = new JPasswordField(10);
+        tlsKeyStorePasswordField.setToolTipText(STORE_PASSWORD_TIP);
+        keyPanel.add(tlsKeyStorePasswordField);
+        panel.add(keyPanel);
+        
+        JPanel specPanel = new HorizontalPanel();
+        specPanel.add(new JLabel("Protocols:"));
+        tlsProtocolsField = new JTextField(12);
+        tlsProtocolsField.setToolTipText("e.g. TLSv1.3, TLSv1.2");
+        specPanel.add(tlsProtocolsField);
+        specPanel.add(new JLabel("Cipher suites:"));
+        tlsCipherSuitesField = new JTextField(25);
+        specPanel.add(tlsCipherSuitesField);
+        panel.add(specPanel);
+        
+        return panel;
+    }
+    
+    private JPanel createRatePanel() {
+        JPanel panel = new HorizontalPanel();
+        panel.setBorder(createTitledBorder("Arrival Rate (shared by all threads per method)"));
+        
+        panel.add(new JLabel("Mode:"));
+        rateModeComboBox = new JComboBox<>(new String[] {"none", "constant", "step", "poisson"});
+        panel.add(rateModeComboBox);
+        
+        panel.add(new JLabel("Calls/sec:"));
+        ratePerSecondField = new JTextField(6);
+        panel.add(ratePerSecondField);
+        
+        panel.add(new JLabel("Step +calls/sec:"));
+        rateStepIncrementField = new JTextField(5);
+        panel.add(rateStepIncrementField);
+        
+        panel.add(new JLabel("Step every (seconds):"));
+        rateStepSecondsField = new JTextField(5);
+        panel.add(rateStepSecondsField);
+        
+        rateCoCorrectionCheckBox = new JCheckBox("Measure from intended start");
+        panel.add(rateCoCorrectionCheckBox);
         
         return panel;
     }
@@ -242,6 +615,20 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         methodComboBox = new JComboBox<>();
         panel.add(methodComboBox);
         
+        panel.add(new JLabel("Filter:"));
+        methodFilterField = new JTextField(12);
+        methodFilterField.setToolTipText("Show only services and methods containing this text");
+        methodFilterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { filterChanged(); }
+            @Override public void removeUpdate(DocumentEvent e) { filterChanged(); }
+            @Override public void changedUpdate(DocumentEvent e) { filterChanged(); }
+            
+            private void filterChanged() {
+                applyFilter((String) serviceComboBox.getSelectedItem(), (String) methodComboBox.getSelectedItem());
+            }
+        });
+        panel.add(methodFilterField);
+        
         return panel;
     }
     
@@ -249,7 +636,13 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         VerticalPanel panel = new VerticalPanel();
         panel.setBorder(createTitledBorder("Request Configuration"));
         
-        panel.add(new JLabel("Request JSON:"));
+        JPanel labelPanel = new HorizontalPanel();
+        labelPanel.add(new JLabel("Request JSON:"));
+        JButton templateButton = new JButton("Generate from proto");
+        templateButton.setToolTipText("Fill in a JSON skeleton of the selected method's request message");
+        templateButton.addActionListener(new GenerateTemplateAction());
+        labelPanel.add(templateButton);
+        panel.add(labelPanel);
         requestJsonArea = new JTextArea(8, 50);
         requestJsonArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
         requestJsonArea.setText("{\n  \n}");
@@ -266,7 +659,11 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         // Use text format checkbox
         useTextFormatCheckBox = new JCheckBox("Use gRPC-Web Text Format (Base64 encoded)");
         panel.add(useTextFormatCheckBox);
-        
+
+        compiledCodecCheckBox = new JCheckBox("Fast JSON conversion (compiled per message type)", false);
+        compiledCodecCheckBox.setToolTipText("Convert with lookup tables compiled per message type instead of protobuf's JsonFormat; same JSON, less CPU");
+        panel.add(compiledCodecCheckBox);
+
         // Custom headers
         panel.add(new JLabel("Custom Headers (one per line, format: Name: Value):"));
         customHeadersArea = new JTextArea(4, 50);
@@ -274,6 +671,75 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         JScrollPane headersScrollPane = new JScrollPane(customHeadersArea);
         panel.add(headersScrollPane);
         
+        // Retry / hedging policy
+        panel.add(new JLabel("Service Config (gRPC service config JSON with retryPolicy or hedgingPolicy):"));
+        serviceConfigArea = new JTextArea(4, 50);
+        serviceConfigArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JScrollPane serviceConfigScrollPane = new JScrollPane(serviceConfigArea);
+        panel.add(serviceConfigScrollPane);
+        requireGrpcStatusCheckBox = new JCheckBox("Fail HTTP 200 responses without grpc-status (UNKNOWN)");
+        requireGrpcStatusCheckBox.setToolTipText("As the gRPC spec requires; off treats them as OK, like earlier versions");
+        panel.add(requireGrpcStatusCheckBox);
+        
+        // Warm-up before recording starts
+        JPanel warmUpPanel = new HorizontalPanel();
+        warmUpCheckBox = new JCheckBox("Warm up before test (preload protos)");
+        warmUpPanel.add(warmUpCheckBox);
+        warmUpPanel.add(new JLabel("Pre-open connections:"));
+        warmUpConnectionsField = new JTextField("0", 4);
+        warmUpPanel.add(warmUpConnectionsField);
+        warmUpPanel.add(new JLabel("Unrecorded calls:"));
+        warmUpCallsField = new JTextField("0", 4);
+        warmUpPanel.add(warmUpCallsField);
+        sharedConnectionsCheckBox = new JCheckBox("Share connections across threads");
+        sharedConnectionsCheckBox.setToolTipText("Always on when connections are pre-opened; otherwise each thread opens its own");
+        warmUpPanel.add(sharedConnectionsCheckBox);
+        panel.add(warmUpPanel);
+        
+        // Binary response recording
+        JPanel recordPanel = new HorizontalPanel();
+        recordPanel.add(new JLabel("Record responses to file:"));
+        recordFileField = new JTextField(25);
+        recordFileField.setToolTipText("Raw responses are appended here; decode them with ResponseRecordReader");
+        recordPanel.add(recordFileField);
+        recordPanel.add(new JLabel("Buffer (records):"));
+        recordBufferField = new JTextField("8192", 6);
+        recordPanel.add(recordBufferField);
+        panel.add(recordPanel);
+        
+        // Response storage: full JSON, or a capped prefix plus digest for long runs
+        JPanel storagePanel = new HorizontalPanel();
+        storagePanel.add(new JLabel("Store response:"));
+        responseModeComboBox = new JComboBox<>(new String[] {
+                GrpcWebSampler.RESPONSE_MODE_FULL, GrpcWebSampler.RESPONSE_MODE_DIGEST});
+        responseModeComboBox.setToolTipText("digest keeps only the first characters of the JSON and its SHA-256");
+        storagePanel.add(responseModeComboBox);
+        storagePanel.add(new JLabel("Keep first (chars):"));
+        digestPrefixField = new JTextField("1024", 6);
+        storagePanel.add(digestPrefixField);
+        storagePanel.add(new JLabel("Checksum fields:"));
+        digestFieldsField = new JTextField(15);
+        digestFieldsField.setToolTipText("Comma-separated field paths, e.g. user.id, items");
+        storagePanel.add(digestFieldsField);
+        storagePanel.add(new JLabel("Expected digest:"));
+        expectedDigestField = new JTextField(20);
+        storagePanel.add(expectedDigestField);
+        panel.add(storagePanel);
+        
+        // Replay of a workload imported from a HAR capture
+        JPanel replayPanel = new HorizontalPanel();
+        replayPanel.add(new JLabel("Replay workload file:"));
+        replayFileField = new JTextField(25);
+        replayFileField.setToolTipText("Workload written by HarImporter; replaces the request configured above");
+        replayPanel.add(replayFileField);
+        replayPanel.add(new JLabel("Speed (x):"));
+        replaySpeedField = new JTextField(4);
+        replaySpeedField.setToolTipText("1 = original timing, 2 = twice as fast; blank means 1");
+        replayPanel.add(replaySpeedField);
+        replayLoopCheckBox = new JCheckBox("Loop");
+        replayPanel.add(replayLoopCheckBox);
+        panel.add(replayPanel);
+        
         return panel;
     }
     
@@ -317,25 +783,58 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
                 return;
             }
             
+            // Use the static method to get/create parser - SHARED WITH SAMPLER!
+            loadProtoAsync(protoPath, (String) serviceComboBox.getSelectedItem(),
+                    (String) methodComboBox.getSelectedItem(), true);
+        }
+    }
+    
+    /** Compiles a proto off the EDT so large files do not freeze JMeter; cancellable from the GUI. */
+    private class ProtoLoadWorker extends SwingWorker<ProtoFileParser, Void> {
+        private final String protoPath;
+        private final int generation;
+        private final boolean interactive;
+        
+        ProtoLoadWorker(String protoPath, int generation, boolean interactive) {
+            this.protoPath = protoPath;
+            this.generation = generation;
+            this.interactive = interactive;
+        }
+        
+        @Override
+        protected ProtoFileParser doInBackground() throws Exception {
+            // Compiled here rather than through the shared cache, so Cancel actually stops protoc.
+            // Parse always recompiles, so edits to the .proto replace the cached descriptors.
+            ProtoFileParser cached = interactive ? null : GrpcWebSampler.getCachedProtoParser(protoPath);
+            return cached != null ? cached : GrpcWebSampler.compileProtoParser(protoPath);
+        }
+        
+        @Override
+        protected void done() {
+            if (generation != loadGeneration) return; // the GUI moved on to another element
+            if (isCancelled()) {
+                setLoading(false, "Loading cancelled");
+                return;
+            }
             try {
-                // Use the static method to get/create parser - SHARED WITH SAMPLER!
-                ProtoFileParser parser = GrpcWebSampler.getProtoParserForPath(protoPath);
+                ProtoFileParser parser = get();
                 
                 if (parser == null) {
                     throw new Exception("Failed to parse proto file");
                 }
                 
-                // Update service combo box
-                serviceComboBox.removeAllItems();
                 Set<String> services = parser.getServices();
-                
-                for (String service : services) {
-                    serviceComboBox.addItem(service);
+                setLoading(false, services.size() + " service(s) loaded");
+                applyParser(parser, pendingService, pendingMethod);
+                if (!interactive) return;
+                if (parser.getDescriptorSetBytes() == null) {
+                    // Never save descriptors of an older version of this proto
+                    embeddedParser = parser;
+                    embeddedDescriptorSet = null;
+                    embeddedDescriptorHash = null;
+                    warnIfNothingToEmbed();
                 }
                 
-                // Store reference for method loading
-                protoParser = parser;
-                
                 if (!services.isEmpty()) {
                     // Show debug info
                     String debugInfo = parser.getDebugInfo();
@@ -355,9 +854,12 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
                 }
                 
             } catch (Exception ex) {
-                log.error("Error parsing proto file", ex);
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                log.error("Error parsing proto file", cause);
+                setLoading(false, "Loading failed");
+                if (!interactive) return;
                 JOptionPane.showMessageDialog(GrpcWebSamplerGui.this,
-                    "Error parsing proto file:\n\n" + ex.getMessage() + 
+                    "Error parsing proto file:\n\n" + cause.getMessage() + 
                     "\n\nPlease check:\n" +
                     "1. File path is correct\n" +
                     "2. File is readable\n" +
@@ -372,16 +874,41 @@ public class GrpcWebSamplerGui extends AbstractSamplerGui {
         public void actionPerformed(ActionEvent e) {
             String selectedService = (String) serviceComboBox.getSelectedItem();
             if (selectedService != null && protoParser != null) {
-                methodComboBox.removeAllItems();
                 try {
-                    List<String> methods = protoParser.getMethodsForService(selectedService);
-                    for (String method : methods) {
-                        methodComboBox.addItem(method);
-                    }
+                    refreshMethods(null);
                 } catch (Exception ex) {
                     log.error("Error loading methods for service: " + selectedService, ex);
                 }
             }
         }
     }
+    
+    private class GenerateTemplateAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            String service = (String) serviceComboBox.getSelectedItem();
+            String method = (String) methodComboBox.getSelectedItem();
+            if (protoParser == null || service == null || method == null) {
+                JOptionPane.showMessageDialog(GrpcWebSamplerGui.this,
+                    "Parse a proto file and select a service and method first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            try {
+                Descriptors.Descriptor input = protoParser.getMethodDescriptor(service, method).getInputType();
+                String current = requestJsonArea.getText().replaceAll("\\s", "");
+                if (!current.isEmpty() && !current.equals("{}")) {
+                    int answer = JOptionPane.showConfirmDialog(GrpcWebSamplerGui.this,
+                        "Replace the current request JSON with a template for " + input.getName() + "?",
+                        "Generate Request Template", JOptionPane.YES_NO_OPTION);
+                    if (answer != JOptionPane.YES_OPTION) return;
+                }
+                requestJsonArea.setText(JsonTemplateGenerator.generate(input));
+                requestJsonArea.setCaretPosition(0);
+            } catch (Exception ex) {
+                log.error("Error generating request template", ex);
+                JOptionPane.showMessageDialog(GrpcWebSamplerGui.this,
+                    "Cannot generate a template:\n\n" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
 }
\ No newline at end of file
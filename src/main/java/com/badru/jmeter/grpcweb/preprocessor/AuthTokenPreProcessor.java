@@ -0,0 +1,269 @@
+package com.badru.jmeter.grpcweb.preprocessor;
+
+import com.badru.jmeter.grpcweb.client.EndpointGroup;
+import com.badru.jmeter.grpcweb.client.GrpcWebClient;
+import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebRequest;
+import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebResponse;
+import com.badru.jmeter.grpcweb.client.TlsConfig;
+import com.badru.jmeter.grpcweb.sampler.GrpcWebSampler;
+import com.badru.jmeter.grpcweb.util.Hashes;
+import com.badru.jmeter.grpcweb.util.ProtoFileParser;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import org.apache.jmeter.processor.PreProcessor;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs in with a gRPC-Web call and hands the token to the gRPC-Web samplers in its scope,
+ * which send it as a request header. Tokens are cached per thread or per user (all threads
+ * sending the same login request) and refreshed in the background before they expire, so
+ * the login call stays out of the measured requests. When the login fails, the samplers in
+ * scope fail without sending their requests.
+ */
+public class AuthTokenPreProcessor extends AbstractTestElement implements PreProcessor, TestStateListener {
+    private static final Logger log = LoggerFactory.getLogger(AuthTokenPreProcessor.class);
+
+    public static final String PROTO_FILE_PATH  = "AuthTokenPreProcessor.protoFilePath";
+    public static final String SERVER_URL       = "AuthTokenPreProcessor.serverUrl";
+    public static final String SERVICE_NAME     = "AuthTokenPreProcessor.serviceName";
+    public static final String METHOD_NAME      = "AuthTokenPreProcessor.methodName";
+    public static final String REQUEST_JSON     = "AuthTokenPreProcessor.requestJson";
+    public static final String TIMEOUT_SECONDS  = "AuthTokenPreProcessor.timeoutSeconds";
+    public static final String TOKEN_FIELD      = "AuthTokenPreProcessor.tokenField";
+    public static final String EXPIRES_IN_FIELD = "AuthTokenPreProcessor.expiresInField";
+    public static final String TTL_SECONDS      = "AuthTokenPreProcessor.ttlSeconds";
+    public static final String REFRESH_AHEAD_SECONDS = "AuthTokenPreProcessor.refreshAheadSeconds";
+    public static final String CACHE_SCOPE      = "AuthTokenPreProcessor.cacheScope";
+    public static final String HEADER_NAME      = "AuthTokenPreProcessor.headerName";
+    public static final String HEADER_PREFIX    = "AuthTokenPreProcessor.headerPrefix";
+    public static final String TLS_TRUSTSTORE          = "AuthTokenPreProcessor.tlsTrustStore";
+    public static final String TLS_TRUSTSTORE_PASSWORD = "AuthTokenPreProcessor.tlsTrustStorePassword";
+    public static final String TLS_KEYSTORE            = "AuthTokenPreProcessor.tlsKeyStore";
+    public static final String TLS_KEYSTORE_PASSWORD   = "AuthTokenPreProcessor.tlsKeyStorePassword";
+    public static final String TLS_PROTOCOLS           = "AuthTokenPreProcessor.tlsProtocols";
+    public static final String TLS_CIPHER_SUITES       = "AuthTokenPreProcessor.tlsCipherSuites";
+
+    public static final String SCOPE_THREAD = "thread";
+    public static final String SCOPE_USER   = "user";
+
+    /** The current token, for use in other elements. */
+    public static final String VAR_AUTH_TOKEN   = "grpcweb_auth_token";
+    /**
+     * Headers (a {@code Map<String, String>} object variable) for the next sampler to add to its
+     * request. The sampler removes them, so samplers outside this element's scope never send them.
+     */
+    public static final String VAR_AUTH_HEADERS = "grpcweb_auth_headers";
+    /**
+     * Why the login failed; set instead of the headers, and reported by the next sampler as its
+     * failure. Removed by that sampler like the headers.
+     */
+    public static final String VAR_AUTH_ERROR   = "grpcweb_auth_error";
+
+    /**
+     * Login clients by server, timeout and TLS config, so logins and refreshes reuse their
+     * connections. TLS configs are shared per settings, so they compare by identity.
+     */
+    private static final Map<List<Object>, GrpcWebClient> LOGIN_CLIENTS = new ConcurrentHashMap<>();
+
+    @Override
+    public void process() {
+        JMeterVariables vars = JMeterContextService.getContext().getVariables();
+        if (vars == null) return;
+        try {
+            String token = TokenCache.getToken(cacheKey(), loginCall(),
+                    TimeUnit.SECONDS.toMillis(Math.max(0, getRefreshAheadSeconds())));
+            String header = getHeaderName().trim();
+            String prefix = getHeaderPrefix().trim();
+            vars.put(VAR_AUTH_TOKEN, token);
+            vars.putObject(VAR_AUTH_HEADERS, Collections.singletonMap(
+                    header.isEmpty() ? "Authorization" : header, prefix.isEmpty() ? token : prefix + " " + token));
+            vars.remove(VAR_AUTH_ERROR);
+        } catch (Exception ex) {
+            log.error("[Auth] login via {}/{} failed: {}", getServiceName(), getMethodName(), ex.toString());
+            vars.remove(VAR_AUTH_TOKEN);
+            vars.remove(VAR_AUTH_HEADERS);
+            vars.put(VAR_AUTH_ERROR, "Login via " + getServiceName() + "/" + getMethodName() + " failed: "
+                    + (ex.getMessage() != null ? ex.getMessage() : ex.toString()));
+        }
+    }
+
+    /**
+     * Removes and returns the headers left for the sample about to run, or an empty map when
+     * no pre-processor ran for it.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, String> takeHeaders(JMeterVariables vars) {
+        Object headers = vars != null ? vars.remove(VAR_AUTH_HEADERS) : null;
+        return headers instanceof Map ? (Map<String, String>) headers : Collections.<String, String>emptyMap();
+    }
+
+    /** Removes and returns the login failure left for the sample about to run, or {@code null}. */
+    public static String takeError(JMeterVariables vars) {
+        Object error = vars != null ? vars.remove(VAR_AUTH_ERROR) : null;
+        return error != null ? error.toString() : null;
+    }
+
+    /**
+     * Threads with the same login request share a token in user scope. The request is
+     * hashed so credentials never end up in the key, which is logged.
+     */
+    private String cacheKey() {
+        String request = Hashes.sha256Hex(getRequestJson().getBytes(StandardCharsets.UTF_8));
+        String key = getServerUrl() + "|" + getServiceName() + "/" + getMethodName() + "|" + request.substring(0, 16);
+        if (!SCOPE_USER.equals(getCacheScope())) {
+            key += "|" + Thread.currentThread().getName();
+        }
+        return key;
+    }
+
+    /**
+     * Captures the evaluated settings, since background refreshes run outside any JMeter
+     * thread and cannot evaluate variables themselves.
+     */
+    private Callable<TokenCache.Token> loginCall() {
+        final String protoPath = getProtoFilePath();
+        final String serverUrl = getServerUrl();
+        final String service = getServiceName();
+        final String method = getMethodName();
+        final String json = getRequestJson();
+        final int timeout = getTimeoutSeconds();
+        final String tokenField = getTokenField().trim();
+        final String expiresInField = getExpiresInField().trim();
+        final long ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(1, getTtlSeconds()));
+        final String trustStore = getTlsTrustStore();
+        final String trustStorePassword = getTlsTrustStorePassword();
+        final String keyStore = getTlsKeyStore();
+        final String keyStorePassword = getTlsKeyStorePassword();
+        final String protocols = getTlsProtocols();
+        final String cipherSuites = getTlsCipherSuites();
+        return () -> {
+            ProtoFileParser parser = GrpcWebSampler.getProtoParserForPath(protoPath);
+            if (parser == null) throw new IllegalStateException("Proto file path not set");
+            GrpcWebRequest req = new GrpcWebRequest();
+            req.setPackageName(parser.getPackageName());
+            req.setServiceName(service);
+            req.setMethodName(method);
+            req.setMessage(parser.createMessageFromJson(service, method, json));
+            req.setHeaders(Collections.<String, String>emptyMap());
+
+            TlsConfig tls = TlsConfig.forSettings(trustStore, trustStorePassword, keyStore, keyStorePassword,
+                    protocols, cipherSuites);
+            GrpcWebResponse resp = LOGIN_CLIENTS.computeIfAbsent(Arrays.<Object>asList(serverUrl, timeout, tls),
+                    k -> new GrpcWebClient(EndpointGroup.forSpec(serverUrl, EndpointGroup.Policy.ROUND_ROBIN, false, 0L),
+                            timeout, tls)).executeRequest(req);
+            if (!resp.isSuccessful()) {
+                throw new IllegalStateException("HTTP " + resp.getHttpStatusCode()
+                        + ", grpc-status " + resp.getGrpcStatus() + ": " + resp.getGrpcMessage());
+            }
+            DynamicMessage.Builder builder = parser.getOutputMessageBuilder(service, method);
+            builder.mergeFrom(resp.getMessageBytes());
+            DynamicMessage reply = builder.build();
+
+            Object token = fieldValue(reply, tokenField);
+            if (token == null || token.toString().isEmpty()) {
+                throw new IllegalStateException("No token in field '" + tokenField + "' of the login response");
+            }
+            long tokenTtl = ttlMillis;
+            Object expiresIn = expiresInField.isEmpty() ? null : fieldValue(reply, expiresInField);
+            if (expiresIn instanceof Number && ((Number) expiresIn).longValue() > 0) {
+                tokenTtl = TimeUnit.SECONDS.toMillis(((Number) expiresIn).longValue());
+            }
+            return new TokenCache.Token(token.toString(), tokenTtl);
+        };
+    }
+
+    /** Follows a dotted path of field names (proto or JSON) and returns the value, or {@code null} if unset. */
+    static Object fieldValue(Message message, String path) {
+        Object value = message;
+        for (String name : path.split("\\.")) {
+            if (!(value instanceof Message)) return null;
+            Message current = (Message) value;
+            Descriptors.FieldDescriptor field = ProtoFileParser.findField(current.getDescriptorForType(), name);
+            if (field == null || field.isRepeated()) return null;
+            if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE && !current.hasField(field)) {
+                return null;
+            }
+            value = current.getField(field);
+        }
+        return value instanceof Descriptors.EnumValueDescriptor
+                ? ((Descriptors.EnumValueDescriptor) value).getName() : value;
+    }
+
+    @Override
+    public void testStarted() {
+        TokenCache.clear();
+        closeLoginClients();
+    }
+
+    @Override
+    public void testStarted(String host) { testStarted(); }
+
+    @Override
+    public void testEnded() {
+        TokenCache.clear();
+        closeLoginClients();
+    }
+
+    private static void closeLoginClients() {
+        for (GrpcWebClient client : LOGIN_CLIENTS.values()) client.close();
+        LOGIN_CLIENTS.clear();
+    }
+
+    @Override
+    public void testEnded(String host) { testEnded(); }
+
+    public void setProtoFilePath(String path)    { setProperty(PROTO_FILE_PATH, path); }
+    public void setServerUrl(String url)         { setProperty(SERVER_URL, url); }
+    public void setServiceName(String name)      { setProperty(SERVICE_NAME, name); }
+    public void setMethodName(String name)       { setProperty(METHOD_NAME, name); }
+    public void setRequestJson(String json)      { setProperty(REQUEST_JSON, json); }
+    public void setTimeoutSeconds(int seconds)   { setProperty(TIMEOUT_SECONDS, seconds); }
+    public void setTokenField(String path)       { setProperty(TOKEN_FIELD, path); }
+    public void setExpiresInField(String path)   { setProperty(EXPIRES_IN_FIELD, path); }
+    public void setTtlSeconds(int seconds)       { setProperty(TTL_SECONDS, seconds); }
+    public void setRefreshAheadSeconds(int seconds) { setProperty(REFRESH_AHEAD_SECONDS, seconds); }
+    public void setCacheScope(String scope)      { setProperty(CACHE_SCOPE, scope); }
+    public void setHeaderName(String name)       { setProperty(HEADER_NAME, name); }
+    public void setHeaderPrefix(String prefix)   { setProperty(HEADER_PREFIX, prefix); }
+    public void setTlsTrustStore(String path)    { setProperty(TLS_TRUSTSTORE, path); }
+    public void setTlsTrustStorePassword(String pw) { setProperty(TLS_TRUSTSTORE_PASSWORD, pw); }
+    public void setTlsKeyStore(String path)      { setProperty(TLS_KEYSTORE, path); }
+    public void setTlsKeyStorePassword(String pw) { setProperty(TLS_KEYSTORE_PASSWORD, pw); }
+    public void setTlsProtocols(String list)     { setProperty(TLS_PROTOCOLS, list); }
+    public void setTlsCipherSuites(String list)  { setProperty(TLS_CIPHER_SUITES, list); }
+
+    public String getProtoFilePath()  { return getPropertyAsString(PROTO_FILE_PATH); }
+    public String getServerUrl()      { return getPropertyAsString(SERVER_URL); }
+    public String getServiceName()    { return getPropertyAsString(SERVICE_NAME); }
+    public String getMethodName()     { return getPropertyAsString(METHOD_NAME); }
+    public String getRequestJson()    { return getPropertyAsString(REQUEST_JSON, "{}"); }
+    public int getTimeoutSeconds()    { return getPropertyAsInt(TIMEOUT_SECONDS, 30); }
+    public String getTokenField()     { return getPropertyAsString(TOKEN_FIELD, "token"); }
+    public String getExpiresInField() { return getPropertyAsString(EXPIRES_IN_FIELD, ""); }
+    public int getTtlSeconds()        { return getPropertyAsInt(TTL_SECONDS, 300); }
+    public int getRefreshAheadSeconds() { return getPropertyAsInt(REFRESH_AHEAD_SECONDS, 30); }
+    public String getCacheScope()     { return getPropertyAsString(CACHE_SCOPE, SCOPE_THREAD); }
+    public String getHeaderName()     { return getPropertyAsString(HEADER_NAME, "Authorization"); }
+    public String getHeaderPrefix()   { return getPropertyAsString(HEADER_PREFIX, "Bearer"); }
+    public String getTlsTrustStore()  { return getPropertyAsString(TLS_TRUSTSTORE); }
+    public String getTlsTrustStorePassword() { return getPropertyAsString(TLS_TRUSTSTORE_PASSWORD); }
+    public String getTlsKeyStore()    { return getPropertyAsString(TLS_KEYSTORE); }
+    public String getTlsKeyStorePassword() { return getPropertyAsString(TLS_KEYSTORE_PASSWORD); }
+    public String getTlsProtocols()   { return getPropertyAsString(TLS_PROTOCOLS); }
+    public String getTlsCipherSuites(){ return getPropertyAsString(TLS_CIPHER_SUITES); }
+}
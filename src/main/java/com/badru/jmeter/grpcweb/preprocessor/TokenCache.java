@@ -0,0 +1,134 @@
+package com.badru.jmeter.grpcweb.preprocessor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Auth tokens shared by the threads of a test, keyed by the caller (a thread, or all
+ * threads sending the same login request). A missing or expired token is fetched on the
+ * calling thread; afterwards a background thread fetches a new one shortly before the
+ * current one expires, so sampler threads normally never wait for a login. Tokens nobody
+ * has asked for in {@link #IDLE_TIMEOUT_MILLIS}, such as those of finished threads, are
+ * dropped instead of refreshed.
+ */
+class TokenCache {
+    private static final Logger log = LoggerFactory.getLogger(TokenCache.class);
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final long RETRY_DELAY_MILLIS = 5000L;
+    private static final long MIN_REFRESH_DELAY_MILLIS = 100L;
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static ScheduledExecutorService refresher;
+
+    private TokenCache() {}
+
+    /** A token and the time it stops being valid. */
+    static class Token {
+        final String value;
+        final long expiresAtNanos;
+
+        Token(String value, long ttlMillis) {
+            this.value = value;
+            this.expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        }
+
+        long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime());
+        }
+    }
+
+    private static class Entry {
+        volatile Token token;
+        volatile long lastReadNanos = System.nanoTime();
+        ScheduledFuture<?> refresh;
+
+        boolean idle() {
+            return System.nanoTime() - lastReadNanos > TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Returns a valid token for {@code key}, calling {@code login} on this thread if none
+     * is cached. Threads sharing a key wait for a single login rather than each doing one.
+     */
+    static String getToken(String key, Callable<Token> login, long refreshAheadMillis) throws Exception {
+        Entry entry = ENTRIES.computeIfAbsent(key, k -> new Entry());
+        entry.lastReadNanos = System.nanoTime();
+        Token token = entry.token;
+        if (token != null && token.remainingMillis() > 0) return token.value;
+        synchronized (entry) {
+            token = entry.token;
+            if (token == null || token.remainingMillis() <= 0) {
+                token = login.call();
+                entry.token = token;
+                scheduleRefresh(key, entry, login, refreshDelay(token, refreshAheadMillis), refreshAheadMillis);
+            }
+            return token.value;
+        }
+    }
+
+    /** Refresh {@code refreshAheadMillis} before expiry, but never earlier than half-way through the token's life. */
+    private static long refreshDelay(Token token, long refreshAheadMillis) {
+        long remaining = token.remainingMillis();
+        return Math.max(MIN_REFRESH_DELAY_MILLIS, remaining - Math.min(refreshAheadMillis, remaining / 2));
+    }
+
+    private static synchronized void scheduleRefresh(String key, Entry entry, Callable<Token> login,
+                                                     long delayMillis, long refreshAheadMillis) {
+        if (ENTRIES.get(key) != entry) return; // cleared since
+        if (refresher == null) {
+            AtomicInteger count = new AtomicInteger();
+            refresher = Executors.newScheduledThreadPool(2, r -> {
+                Thread t = new Thread(r, "grpcweb-token-refresh-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (entry.refresh != null) entry.refresh.cancel(false);
+        entry.refresh = refresher.schedule(() -> refresh(key, entry, login, refreshAheadMillis),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void refresh(String key, Entry entry, Callable<Token> login, long refreshAheadMillis) {
+        if (entry.idle()) {
+            // A later getToken creates a new entry and logs in on its own thread
+            ENTRIES.remove(key, entry);
+            log.debug("[Auth] token for {} not used for {} ms, no longer refreshed", key, IDLE_TIMEOUT_MILLIS);
+            return;
+        }
+        try {
+            Token token = login.call();
+            entry.token = token;
+            log.debug("[Auth] token for {} refreshed, valid for {} ms", key, token.remainingMillis());
+            scheduleRefresh(key, entry, login, refreshDelay(token, refreshAheadMillis), refreshAheadMillis);
+        } catch (Exception ex) {
+            // Keep using the current token while it lasts and try again shortly
+            Token current = entry.token;
+            long remaining = current != null ? current.remainingMillis() : 0L;
+            log.warn("[Auth] background token refresh for {} failed ({} ms left): {}", key, remaining, ex.toString());
+            if (remaining > 0) {
+                scheduleRefresh(key, entry, login, Math.min(RETRY_DELAY_MILLIS, remaining), refreshAheadMillis);
+            }
+        }
+    }
+
+    /** Drops every token and stops background refreshes. */
+    static synchronized void clear() {
+        for (Entry entry : ENTRIES.values()) {
+            if (entry.refresh != null) entry.refresh.cancel(false);
+        }
+        ENTRIES.clear();
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+}
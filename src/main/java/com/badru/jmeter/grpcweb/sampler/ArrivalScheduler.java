@@ -0,0 +1,143 @@
+package com.badru.jmeter.grpcweb.sampler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model arrival schedule shared by every sampler thread calling the same
+ * service/method. Threads reserve start slots with a CAS on the next slot time and
+ * park until their slot, so the target rate holds regardless of response latency.
+ * The distance between the reserved slot and the actual start is the scheduling lag.
+ */
+public class ArrivalScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ArrivalScheduler.class);
+    private static final Map<String, ArrivalScheduler> SCHEDULERS = new ConcurrentHashMap<>();
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Mode { CONSTANT, STEP, POISSON }
+
+    private final String key;
+    private final Mode mode;
+    private final double ratePerSecond;
+    private final double stepIncrement;
+    private final long stepNanos;
+    private final long origin;
+    private final AtomicLong nextSlot;
+    private final AtomicBoolean mismatchLogged = new AtomicBoolean();
+
+    private final LongAdder starts = new LongAdder();
+    private final LongAdder totalLagNanos = new LongAdder();
+    private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0L);
+
+    ArrivalScheduler(String key, Mode mode, double ratePerSecond, double stepIncrement, double stepSeconds) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("Arrival rate must be positive: " + ratePerSecond);
+        this.key = key;
+        this.mode = mode;
+        this.ratePerSecond = ratePerSecond;
+        this.stepIncrement = stepIncrement;
+        this.stepNanos = (long) (Math.max(stepSeconds, 0.001) * NANOS_PER_SECOND);
+        this.origin = System.nanoTime();
+        this.nextSlot = new AtomicLong(origin);
+    }
+
+    /**
+     * Returns the scheduler shared under {@code key}, creating it on first use. The first
+     * sampler to reach a key decides its settings for the rest of the run; a sampler asking
+     * for different settings gets a warning, once per key.
+     */
+    public static ArrivalScheduler forKey(String key, Mode mode, double ratePerSecond,
+                                          double stepIncrement, double stepSeconds) {
+        ArrivalScheduler scheduler = SCHEDULERS.computeIfAbsent(key,
+                k -> new ArrivalScheduler(k, mode, ratePerSecond, stepIncrement, stepSeconds));
+        if (!scheduler.hasSettings(mode, ratePerSecond, stepIncrement, stepSeconds)
+                && scheduler.mismatchLogged.compareAndSet(false, true)) {
+            log.warn("[Arrival schedule] {} already runs {} at {}/s; ignoring {} at {}/s from another sampler",
+                    key, scheduler.mode.name().toLowerCase(Locale.ROOT), scheduler.ratePerSecond,
+                    mode.name().toLowerCase(Locale.ROOT), ratePerSecond);
+        }
+        return scheduler;
+    }
+
+    private boolean hasSettings(Mode mode, double ratePerSecond, double stepIncrement, double stepSeconds) {
+        if (mode != this.mode || ratePerSecond != this.ratePerSecond) return false;
+        return mode != Mode.STEP || (stepIncrement == this.stepIncrement
+                && (long) (Math.max(stepSeconds, 0.001) * NANOS_PER_SECOND) == stepNanos);
+    }
+
+    /** Parses a mode name as stored in the test plan; blank or {@code "none"} disables scheduling. */
+    public static Mode parseMode(String value) {
+        if (value == null || value.trim().isEmpty() || "none".equalsIgnoreCase(value.trim())) return null;
+        return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /** Logs lag statistics for every scheduler and starts the next run from a clean slate. */
+    public static void resetAll() {
+        for (ArrivalScheduler s : SCHEDULERS.values()) {
+            long n = s.starts.sum();
+            if (n > 0) {
+                log.info("[Arrival schedule] {} ({}): {} calls, mean lag {} ms, max lag {} ms", s.key,
+                        s.mode.name().toLowerCase(Locale.ROOT), n,
+                        TimeUnit.NANOSECONDS.toMillis(s.totalLagNanos.sum() / n),
+                        TimeUnit.NANOSECONDS.toMillis(s.maxLagNanos.get()));
+            }
+        }
+        SCHEDULERS.clear();
+    }
+
+    /** Reserves the next arrival slot and returns its intended start in {@link System#nanoTime()} terms. */
+    public long reserve() {
+        while (true) {
+            long slot = nextSlot.get();
+            long next = slot + intervalAt(slot);
+            if (nextSlot.compareAndSet(slot, next)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Parks the calling thread until {@code slot}. Returns {@code false} if the thread was
+     * interrupted first, in which case the call should not be made.
+     */
+    public boolean awaitSlot(long slot) {
+        long remaining;
+        while ((remaining = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) return false;
+        }
+        return true;
+    }
+
+    /** Records that the call reserved at {@code slot} has started now and returns its lag in nanoseconds. */
+    public long recordStart(long slot) {
+        long lag = Math.max(0L, System.nanoTime() - slot);
+        starts.increment();
+        totalLagNanos.add(lag);
+        maxLagNanos.accumulate(lag);
+        return lag;
+    }
+
+    private long intervalAt(long slot) {
+        double rate = ratePerSecond;
+        if (mode == Mode.STEP) {
+            rate += stepIncrement * ((slot - origin) / stepNanos);
+            if (rate <= 0) rate = ratePerSecond;
+        }
+        double meanNanos = NANOS_PER_SECOND / rate;
+        if (mode == Mode.POISSON) {
+            return Math.max(1L, (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanNanos));
+        }
+        return Math.max(1L, (long) meanNanos);
+    }
+}
@@ -1,24 +1,39 @@
 // File: src/main/java/com/badru/jmeter/grpcweb/sampler/GrpcWebSampler.java
 package com.badru.jmeter.grpcweb.sampler;
 
+import com.badru.jmeter.grpcweb.client.EndpointGroup;
 import com.badru.jmeter.grpcweb.client.GrpcWebClient;
 import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebRequest;
 import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebResponse;
+import com.badru.jmeter.grpcweb.client.ServiceConfig;
+import com.badru.jmeter.grpcweb.client.TlsConfig;
+import com.badru.jmeter.grpcweb.preprocessor.AuthTokenPreProcessor;
+import com.badru.jmeter.grpcweb.util.JsonProtoCodec;
 import com.badru.jmeter.grpcweb.util.ProtoFileParser;
+import com.badru.jmeter.grpcweb.util.ResponseDigest;
+import com.badru.jmeter.grpcweb.util.ResponseRecorder;
+import com.badru.jmeter.grpcweb.util.WorkloadFile;
 import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.util.JsonFormat;
+import org.apache.jmeter.assertions.AssertionResult;
 import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.threads.JMeterVariables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 import org.apache.jmeter.testelement.property.BooleanProperty;
 
 
@@ -35,8 +50,56 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
     public static final String USE_TEXT_FORMAT = "GrpcWebSampler.useTextFormat";
     public static final String CUSTOM_HEADERS  = "GrpcWebSampler.customHeaders";
     public static final String USE_RELATIVE_PATH    = "GrpcWebSampler.useRelativePath";
+    public static final String SERVICE_CONFIG  = "GrpcWebSampler.serviceConfig";
+    public static final String REQUIRE_GRPC_STATUS = "GrpcWebSampler.requireGrpcStatus";
+    public static final String RATE_MODE           = "GrpcWebSampler.rateMode";
+    public static final String RATE_PER_SECOND     = "GrpcWebSampler.ratePerSecond";
+    public static final String RATE_STEP_INCREMENT = "GrpcWebSampler.rateStepIncrement";
+    public static final String RATE_STEP_SECONDS   = "GrpcWebSampler.rateStepSeconds";
+    public static final String RATE_CO_CORRECTION  = "GrpcWebSampler.rateCoCorrection";
+    public static final String WARMUP_ENABLED      = "GrpcWebSampler.warmUpEnabled";
+    public static final String WARMUP_CONNECTIONS  = "GrpcWebSampler.warmUpConnections";
+    public static final String WARMUP_CALLS        = "GrpcWebSampler.warmUpCalls";
+    public static final String SHARED_CONNECTIONS  = "GrpcWebSampler.sharedConnections";
+    public static final String LB_POLICY           = "GrpcWebSampler.lbPolicy";
+    public static final String LB_RESOLVE_ALL      = "GrpcWebSampler.lbResolveAll";
+    public static final String LB_LABEL_BY_BACKEND = "GrpcWebSampler.lbLabelByBackend";
+    public static final String DNS_TTL_SECONDS     = "GrpcWebSampler.dnsTtlSeconds";
+    public static final String TLS_TRUSTSTORE          = "GrpcWebSampler.tlsTrustStore";
+    public static final String TLS_TRUSTSTORE_PASSWORD = "GrpcWebSampler.tlsTrustStorePassword";
+    public static final String TLS_KEYSTORE            = "GrpcWebSampler.tlsKeyStore";
+    public static final String TLS_KEYSTORE_PASSWORD   = "GrpcWebSampler.tlsKeyStorePassword";
+    public static final String TLS_PROTOCOLS           = "GrpcWebSampler.tlsProtocols";
+    public static final String TLS_CIPHER_SUITES       = "GrpcWebSampler.tlsCipherSuites";
+    public static final String RECORD_FILE         = "GrpcWebSampler.recordFile";
+    public static final String RECORD_BUFFER_SIZE  = "GrpcWebSampler.recordBufferSize";
+    public static final String EMBED_DESCRIPTORS       = "GrpcWebSampler.embedDescriptors";
+    public static final String PROTO_DESCRIPTOR_SET    = "GrpcWebSampler.protoDescriptorSet";
+    public static final String PROTO_DESCRIPTOR_HASH   = "GrpcWebSampler.protoDescriptorHash";
+    public static final String RESPONSE_MODE       = "GrpcWebSampler.responseMode";
+    public static final String DIGEST_PREFIX_CHARS = "GrpcWebSampler.digestPrefixChars";
+    public static final String DIGEST_FIELDS       = "GrpcWebSampler.digestFields";
+    public static final String EXPECTED_DIGEST     = "GrpcWebSampler.expectedDigest";
+    public static final String REPLAY_FILE         = "GrpcWebSampler.replayFile";
+    public static final String REPLAY_SPEED        = "GrpcWebSampler.replaySpeed";
+    public static final String REPLAY_LOOP         = "GrpcWebSampler.replayLoop";
+    public static final String COMPILED_JSON_CODEC = "GrpcWebSampler.compiledJsonCodec";
+
+    public static final String RESPONSE_MODE_FULL   = "full";
+    public static final String RESPONSE_MODE_DIGEST = "digest";
+
+    /** JMeter variables describing the arrival schedule of the last call, for use with {@code sample_variables}. */
+    public static final String VAR_INTENDED_START = "grpcweb_intended_start";
+    public static final String VAR_SCHEDULE_LAG   = "grpcweb_schedule_lag_ms";
+    /** Digest mode: SHA-256 of the response JSON, and the prefix of per-field checksum variables. */
+    public static final String VAR_RESPONSE_DIGEST = "grpcweb_response_digest";
+    public static final String VAR_FIELD_DIGEST_PREFIX = "grpcweb_digest_";
 
     private transient GrpcWebClient grpcClient;
+    private transient ArrivalScheduler arrivalScheduler;
+    private transient boolean warmUpAwaited;
+    /** Headers an {@link AuthTokenPreProcessor} left for the current sample. */
+    private transient Map<String, String> authHeaders = Collections.emptyMap();
 
     public GrpcWebSampler() {
         super();
@@ -49,68 +112,88 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
         SampleResult result = new SampleResult();
         result.setSampleLabel(getName());
         result.setDataType(SampleResult.TEXT);
+        long intendedStartMillis = 0L;
 
         try {
+            if (!warmUpAwaited) {
+                WarmUp.awaitCompletion();
+                warmUpAwaited = true;
+            }
+            // Taken per sample, so a later sampler outside the pre-processor's scope sends no token
+            JMeterVariables vars = getThreadContext().getVariables();
+            authHeaders = AuthTokenPreProcessor.takeHeaders(vars);
+            String authError = AuthTokenPreProcessor.takeError(vars);
+            if (authError != null) {
+                // Sending without the token would only add failures that hide the real cause
+                result.sampleStart();
+                result.sampleEnd();
+                result.setSuccessful(false);
+                result.setResponseCode("500");
+                result.setResponseMessage(authError);
+                result.setSamplerData(getRequestJson());
+                return result;
+            }
             if (grpcClient == null) {
-                grpcClient = new GrpcWebClient(getServerUrl(), getTimeoutSeconds());
+                grpcClient = createClient();
+                grpcClient.setServiceConfig(ServiceConfig.forJson(getServiceConfig()));
+                grpcClient.setRequireGrpcStatus(getRequireGrpcStatus());
             }
-            String protoPath = getProtoFilePath();
-            if (protoPath == null || protoPath.isEmpty()) {
-                throw new IllegalStateException("Proto file path not set");
+            String replayFile = getReplayFile();
+            if (replayFile != null && !replayFile.trim().isEmpty()) {
+                return sampleReplay(result, replayFile.trim());
             }
-            ProtoFileParser parser = PROTO_CACHE.computeIfAbsent(protoPath, path -> {
-                ProtoFileParser p = new ProtoFileParser();
-                try { p.parseProtoFile(path); } catch (Exception ex) { throw new RuntimeException(ex); }
-                return p;
-            });
-
-            GrpcWebRequest req = new GrpcWebRequest();
-            req.setPackageName(parser.getPackageName());
-            req.setServiceName(getServiceName());
-            req.setMethodName(getMethodName());
-            if (getUseTextFormat()) {
-                req.setUseTextFormat(true);
-                req.setJsonText(getRequestJson());
-            } else {
-                req.setMessage(parser.createMessageFromJson(
-                        getServiceName(), getMethodName(), getRequestJson()));
+            ProtoFileParser parser = resolveProtoParser();
+            GrpcWebRequest req = buildRequest(parser);
+
+            long lagMillis = 0L;
+            ArrivalScheduler scheduler = getArrivalScheduler(parser);
+            if (scheduler != null) {
+                long slot = scheduler.reserve();
+                if (!scheduler.awaitSlot(slot)) {
+                    // Interrupted while waiting, e.g. the test is stopping: the call was never made
+                    return null;
+                }
+                lagMillis = TimeUnit.NANOSECONDS.toMillis(scheduler.recordStart(slot));
+                long intended = System.currentTimeMillis() - lagMillis;
+                getThreadContext().getVariables().put(VAR_INTENDED_START, String.valueOf(intended));
+                getThreadContext().getVariables().put(VAR_SCHEDULE_LAG, String.valueOf(lagMillis));
+                if (getRateCoCorrection()) {
+                    // Measure from the intended start so queueing behind slow calls counts as latency
+                    intendedStartMillis = intended;
+                }
             }
-            req.setHeaders(parseCustomHeaders());
 
-            result.sampleStart();
+            if (intendedStartMillis == 0L) result.sampleStart();
             GrpcWebResponse resp = grpcClient.executeRequest(req);
-            result.sampleEnd();
+            endSample(result, intendedStartMillis);
 
             result.setSuccessful(resp.isSuccessful());
             result.setResponseCode(String.valueOf(resp.getHttpStatusCode()));
             result.setResponseMessage(resp.getGrpcStatus() == 0 ? "OK" : resp.getGrpcMessage());
-            result.setLatency(resp.getResponseTime());
-
-            // Set response headers
-            StringBuilder responseHeaders = new StringBuilder();
-            responseHeaders.append("HTTP/1.1 ").append(resp.getHttpStatusCode()).append("\n");
-            resp.getHeaders().forEach((k, v) -> responseHeaders.append(k).append(": ").append(v).append("\n"));
-            result.setResponseHeaders(responseHeaders.toString());
-
-            // Set request headers
-            StringBuilder requestHeaders = new StringBuilder();
-            resp.getRequestHeaders().forEach((k, v) -> requestHeaders.append(k).append(": ").append(v).append("\n"));
-            result.setRequestHeaders(requestHeaders.toString());
+            result.setLatency(resp.getResponseTime() + (intendedStartMillis != 0L ? lagMillis : 0L));
+            String pkg = parser.getPackageName();
+            recordResponse((pkg == null || pkg.isEmpty() ? "" : pkg + ".") + getServiceName() + "/" + getMethodName(),
+                    result, resp);
+            if (getLbLabelByBackend() && resp.getBackend() != null) {
+                result.setSampleLabel(getName() + " [" + resp.getBackend() + "]");
+            }
+            addAttemptSubResults(result, resp);
+            setResultHeaders(result, resp);
+            // Bytes received, whatever is kept as response data
+            result.setBodySize(resp.getBodySize());
 
             // Set request body (just the JSON)
             result.setSamplerData(getRequestJson());
 
             // Decode response
-            DynamicMessage.Builder builder = parser.getOutputMessageBuilder(
-                    getServiceName(), getMethodName());
-            builder.mergeFrom(resp.getMessageBytes());
-            String responseJson = JsonFormat.printer()
-                    .includingDefaultValueFields()
-                    .print(builder);
-            result.setResponseData(responseJson, StandardCharsets.UTF_8.name());
+            if (RESPONSE_MODE_DIGEST.equals(getResponseMode())) {
+                storeResponseDigest(parser, result, resp);
+            } else {
+                result.setResponseData(decodeResponse(parser, resp), StandardCharsets.UTF_8.name());
+            }
 
         } catch (Exception e) {
-            result.sampleEnd();
+            endSample(result, intendedStartMillis);
             result.setSuccessful(false);
             result.setResponseCode("500");
             result.setResponseMessage("Internal Error: " + e.getMessage());
@@ -120,17 +203,250 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
         return result;
     }
 
+    /**
+     * Sends the next request of the replayed workload once it is due. The proto, if set, is
+     * only used to decode responses. Returns {@code null} and stops the thread when a
+     * non-looping workload is exhausted.
+     */
+    private SampleResult sampleReplay(SampleResult result, String replayFile) throws Exception {
+        WorkloadReplay.Scheduled next = WorkloadReplay.forFile(replayFile, getReplaySpeed(), getReplayLoop()).next();
+        if (next == null) {
+            log.info("[Replay] {} finished, stopping thread", replayFile);
+            getThreadContext().getThread().stop();
+            return null;
+        }
+        if (next.isCancelled()) return null;
+        WorkloadFile.Entry entry = next.getEntry();
+        GrpcWebRequest req = new GrpcWebRequest();
+        req.setPackageName(entry.getPackageName());
+        req.setServiceName(entry.getServiceName());
+        req.setMethodName(entry.getMethodName());
+        req.setFramedBody(entry.getFrames());
+        req.setHeaders(parseCustomHeaders());
+        getThreadContext().getVariables().put(VAR_SCHEDULE_LAG,
+                String.valueOf(TimeUnit.NANOSECONDS.toMillis(next.getLagNanos())));
+
+        result.setSampleLabel(getName() + " " + entry.getServiceName() + "/" + entry.getMethodName());
+        result.sampleStart();
+        GrpcWebResponse resp = grpcClient.executeRequest(req);
+        result.sampleEnd();
+
+        result.setSuccessful(resp.isSuccessful());
+        result.setResponseCode(String.valueOf(resp.getHttpStatusCode()));
+        result.setResponseMessage(resp.getGrpcStatus() == 0 ? "OK" : resp.getGrpcMessage());
+        result.setLatency(resp.getResponseTime());
+        recordResponse(entry.getMethod(), result, resp);
+        addAttemptSubResults(result, resp);
+        setResultHeaders(result, resp);
+        result.setSamplerData(entry.getJson());
+        result.setResponseData(decodeReplayResponse(entry, resp), StandardCharsets.UTF_8.name());
+        result.setBodySize(resp.getBodySize());
+        return result;
+    }
+
+    private String decodeReplayResponse(WorkloadFile.Entry entry, GrpcWebResponse resp) {
+        try {
+            ProtoFileParser parser = resolveProtoParser();
+            DynamicMessage.Builder builder = parser.getOutputMessageBuilder(entry.getServiceName(), entry.getMethodName());
+            builder.mergeFrom(resp.getMessageBytes());
+            return JsonFormat.printer().includingDefaultValueFields().print(builder);
+        } catch (Exception ex) {
+            return "[" + resp.getMessageBytes().length + " response bytes, not decoded: " + ex.getMessage() + "]";
+        }
+    }
+
+    private static void setResultHeaders(SampleResult result, GrpcWebResponse resp) {
+        // Set response headers
+        StringBuilder responseHeaders = new StringBuilder();
+        responseHeaders.append("HTTP/1.1 ").append(resp.getHttpStatusCode()).append("\n");
+        resp.getHeaders().forEach((k, v) -> responseHeaders.append(k).append(": ").append(v).append("\n"));
+        result.setResponseHeaders(responseHeaders.toString());
+
+        // Set request headers
+        StringBuilder requestHeaders = new StringBuilder();
+        resp.getRequestHeaders().forEach((k, v) -> requestHeaders.append(k).append(": ").append(v).append("\n"));
+        result.setRequestHeaders(requestHeaders.toString());
+    }
+
+    /** Hands the raw response to the shared recorder, if recording is enabled; never blocks. */
+    private void recordResponse(String method, SampleResult result, GrpcWebResponse resp) {
+        String file = getRecordFile();
+        if (file == null || file.trim().isEmpty()) return;
+        ResponseRecorder.forFile(file.trim(), getRecordBufferSize()).record(result.getStartTime(), method,
+                resp.getHttpStatusCode(), resp.getGrpcStatus(), result.getLatency(), result.getTime(), resp.getRawBytes());
+    }
+
+    private GrpcWebClient createClient() {
+        EndpointGroup endpoints = EndpointGroup.forSpec(getServerUrl(),
+                EndpointGroup.parsePolicy(getLbPolicy()), getLbResolveAll(), getDnsTtlSeconds());
+        TlsConfig tls = TlsConfig.forSettings(getTlsTrustStore(), getTlsTrustStorePassword(),
+                getTlsKeyStore(), getTlsKeyStorePassword(), getTlsProtocols(), getTlsCipherSuites());
+        return new GrpcWebClient(endpoints, getTimeoutSeconds(), tls, usesSharedConnections());
+    }
+
+    private GrpcWebRequest buildRequest(ProtoFileParser parser) throws Exception {
+        GrpcWebRequest req = new GrpcWebRequest();
+        req.setPackageName(parser.getPackageName());
+        req.setServiceName(getServiceName());
+        req.setMethodName(getMethodName());
+        if (getUseTextFormat()) {
+            req.setUseTextFormat(true);
+            req.setJsonText(getRequestJson());
+        } else if (getCompiledJsonCodec()) {
+            req.setMessageBytes(JsonProtoCodec.forType(
+                    parser.getMethodDescriptor(getServiceName(), getMethodName()).getInputType())
+                    .jsonToBytes(getRequestJson()));
+        } else {
+            req.setMessage(parser.createMessageFromJson(
+                    getServiceName(), getMethodName(), getRequestJson()));
+        }
+        req.setHeaders(parseCustomHeaders());
+        return req;
+    }
+
+    private String decodeResponse(ProtoFileParser parser, GrpcWebResponse resp) throws Exception {
+        if (getCompiledJsonCodec()) {
+            return JsonProtoCodec.forType(
+                    parser.getMethodDescriptor(getServiceName(), getMethodName()).getOutputType())
+                    .bytesToJson(resp.getMessageBytes());
+        }
+        DynamicMessage.Builder builder = parser.getOutputMessageBuilder(
+                getServiceName(), getMethodName());
+        resp.mergeMessageInto(builder);
+        return JsonFormat.printer()
+                .includingDefaultValueFields()
+                .print(builder);
+    }
+
+    /**
+     * Keeps only a prefix of the response JSON plus its digest, so memory use does not grow
+     * with response size. The digest and field checksums are exposed as variables and
+     * checked against the expected digest, if one is set.
+     */
+    private void storeResponseDigest(ProtoFileParser parser, SampleResult result, GrpcWebResponse resp)
+            throws Exception {
+        // Parsed straight from the response body: no message or JSON copies are made
+        DynamicMessage.Builder builder = parser.getOutputMessageBuilder(getServiceName(), getMethodName());
+        resp.mergeMessageInto(builder);
+        ResponseDigest digest = ResponseDigest.compute(builder, getDigestPrefixChars(), getDigestFieldList());
+
+        String data = digest.getPrefix();
+        if (digest.isTruncated()) {
+            data += "\n... [truncated, " + digest.getTotalBytes() + " bytes in total]";
+        }
+        result.setResponseData(data, StandardCharsets.UTF_8.name());
+
+        JMeterVariables vars = getThreadContext().getVariables();
+        vars.put(VAR_RESPONSE_DIGEST, digest.getDigest());
+        digest.getFieldChecksums().forEach((path, checksum) -> vars.put(VAR_FIELD_DIGEST_PREFIX + path, checksum));
+
+        String expected = getExpectedDigest();
+        if (expected != null && !expected.trim().isEmpty()) {
+            AssertionResult assertion = new AssertionResult("Response digest");
+            if (!expected.trim().equalsIgnoreCase(digest.getDigest())) {
+                assertion.setFailure(true);
+                assertion.setFailureMessage("Expected response digest " + expected.trim()
+                        + " but was " + digest.getDigest());
+                result.setSuccessful(false);
+            }
+            result.addAssertionResult(assertion);
+        }
+    }
+
+    private List<String> getDigestFieldList() {
+        List<String> fields = new ArrayList<>();
+        String raw = getDigestFields();
+        if (raw == null) return fields;
+        for (String field : raw.split("[,\\s]+")) {
+            if (!field.isEmpty()) fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * Queues this sampler's warm-up: compile its proto, pre-open connections to its server
+     * and fire unrecorded calls. Work shared with other samplers is only done once.
+     */
+    private void scheduleWarmUp() {
+        String serverUrl = getServerUrl();
+        int connections = getWarmUpConnections();
+        int calls = getWarmUpCalls();
+        WarmUp.submit("sampler '" + getName() + "'", () -> {
+            ProtoFileParser parser = resolveProtoParser();
+            GrpcWebClient client = createClient();
+            if (connections > 0 && WarmUp.claim("connections:" + serverUrl)) {
+                int opened = client.preconnect(connections);
+                log.info("[Warm-up] {} of {} connections to {} answered", opened, connections, serverUrl);
+            }
+            if (parser != null && calls > 0
+                    && WarmUp.claim("calls:" + serverUrl + "/" + getServiceName() + "/" + getMethodName())) {
+                for (int i = 0; i < calls; i++) {
+                    try {
+                        decodeResponse(parser, client.executeRequest(buildRequest(parser)));
+                    } catch (Exception ex) {
+                        log.debug("[Warm-up] call {} of {} failed: {}", i + 1, getName(), ex.toString());
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns the arrival schedule shared by all threads calling this service/method,
+     * or {@code null} when the sampler runs closed-model.
+     */
+    private ArrivalScheduler getArrivalScheduler(ProtoFileParser parser) {
+        ArrivalScheduler.Mode mode = ArrivalScheduler.parseMode(getRateMode());
+        if (mode == null) return null;
+        if (arrivalScheduler == null) {
+            String pkg = parser.getPackageName();
+            String key = (pkg == null || pkg.isEmpty() ? "" : pkg + ".") + getServiceName() + "/" + getMethodName();
+            arrivalScheduler = ArrivalScheduler.forKey(key, mode, getRatePerSecond(),
+                    getRateStepIncrement(), getRateStepSeconds());
+        }
+        return arrivalScheduler;
+    }
+
+    private static void endSample(SampleResult result, long intendedStartMillis) {
+        if (intendedStartMillis != 0L) {
+            if (result.getStartTime() == 0L) {
+                result.setStampAndTime(intendedStartMillis, System.currentTimeMillis() - intendedStartMillis);
+            }
+        } else if (result.getEndTime() == 0L) {
+            result.sampleEnd();
+        }
+    }
+
+    /** Records each retry/hedge attempt as a sub-result so per-attempt timing shows up in listeners. */
+    private void addAttemptSubResults(SampleResult result, GrpcWebResponse resp) {
+        if (resp.getAttempts().size() < 2) return;
+        for (GrpcWebClient.Attempt attempt : resp.getAttempts()) {
+            SampleResult sub = new SampleResult();
+            sub.setSampleLabel(getName() + (attempt.isHedged() ? " hedge #" : " attempt #") + attempt.getNumber());
+            sub.setStampAndTime(attempt.getStartTimeMillis(), attempt.getElapsedMillis());
+            sub.setLatency(attempt.getLatencyMillis());
+            sub.setSuccessful(attempt.isSuccessful());
+            sub.setResponseCode(String.valueOf(attempt.getHttpStatusCode()));
+            sub.setResponseMessage(attempt.getError() != null
+                    ? attempt.getError()
+                    : "grpc-status " + attempt.getGrpcStatus());
+            result.addRawSubResult(sub);
+        }
+    }
+
     private Map<String, String> parseCustomHeaders() {
+        Map<String, String> auth = authHeaders;
         String raw = getPropertyAsString(CUSTOM_HEADERS);
         if (raw == null || raw.isEmpty()) {
-            return Collections.emptyMap();
+            return auth;
         }
-        return Collections.unmodifiableMap(
-                java.util.Arrays.stream(raw.split("\\r?\\n"))
-                        .filter(l -> l.contains(":"))
-                        .map(l -> l.split(":", 2))
-                        .collect(Collectors.toMap(a -> a[0].trim(), a -> a[1].trim()))
-        );
+        Map<String, String> headers = new java.util.LinkedHashMap<>(auth);
+        java.util.Arrays.stream(raw.split("\\r?\\n"))
+                .filter(l -> l.contains(":"))
+                .map(l -> l.split(":", 2))
+                .forEach(a -> headers.put(a[0].trim(), a[1].trim()));
+        return Collections.unmodifiableMap(headers);
     }
 
     public void setProtoFilePath(String path)   { setProperty(PROTO_FILE_PATH, path); }
@@ -142,6 +458,56 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
     public void setUseTextFormat(boolean tf)    { setProperty(USE_TEXT_FORMAT, tf); }
     public void setCustomHeaders(String hdr)    { setProperty(CUSTOM_HEADERS, hdr); }
     public void setUseRelativePath(boolean use) { setProperty(USE_RELATIVE_PATH, use); }
+    public void setServiceConfig(String json)   { setProperty(SERVICE_CONFIG, json); }
+    public void setRequireGrpcStatus(boolean on) { setProperty(REQUIRE_GRPC_STATUS, on); }
+    public void setRateMode(String mode)        { setProperty(RATE_MODE, mode); }
+    public void setRatePerSecond(String rate)   { setProperty(RATE_PER_SECOND, rate); }
+    public void setRateStepIncrement(String inc){ setProperty(RATE_STEP_INCREMENT, inc); }
+    public void setRateStepSeconds(String secs) { setProperty(RATE_STEP_SECONDS, secs); }
+    public void setRateCoCorrection(boolean co) { setProperty(RATE_CO_CORRECTION, co); }
+    public void setWarmUpEnabled(boolean on)    { setProperty(WARMUP_ENABLED, on); }
+    public void setWarmUpConnections(int n)     { setProperty(WARMUP_CONNECTIONS, n); }
+    public void setWarmUpCalls(int n)           { setProperty(WARMUP_CALLS, n); }
+    public void setSharedConnections(boolean on){ setProperty(SHARED_CONNECTIONS, on); }
+    public void setLbPolicy(String policy)      { setProperty(LB_POLICY, policy); }
+    public void setLbResolveAll(boolean all)    { setProperty(LB_RESOLVE_ALL, all); }
+    public void setLbLabelByBackend(boolean on) { setProperty(LB_LABEL_BY_BACKEND, on); }
+    public void setDnsTtlSeconds(int seconds)   { setProperty(DNS_TTL_SECONDS, seconds); }
+    public void setTlsTrustStore(String path)   { setProperty(TLS_TRUSTSTORE, path); }
+    public void setTlsTrustStorePassword(String pw) { setProperty(TLS_TRUSTSTORE_PASSWORD, pw); }
+    public void setTlsKeyStore(String path)     { setProperty(TLS_KEYSTORE, path); }
+    public void setTlsKeyStorePassword(String pw) { setProperty(TLS_KEYSTORE_PASSWORD, pw); }
+    public void setTlsProtocols(String list)    { setProperty(TLS_PROTOCOLS, list); }
+    public void setTlsCipherSuites(String list) { setProperty(TLS_CIPHER_SUITES, list); }
+    public void setRecordFile(String file)      { setProperty(RECORD_FILE, file); }
+    public void setRecordBufferSize(int size)   { setProperty(RECORD_BUFFER_SIZE, size); }
+    public void setEmbedDescriptors(boolean on) { setProperty(EMBED_DESCRIPTORS, on); }
+    public void setProtoDescriptorSet(String base64) { setProperty(PROTO_DESCRIPTOR_SET, base64); }
+    public void setProtoDescriptorHash(String hash)  { setProperty(PROTO_DESCRIPTOR_HASH, hash); }
+    public void setResponseMode(String mode)    { setProperty(RESPONSE_MODE, mode); }
+    public void setDigestPrefixChars(int chars) { setProperty(DIGEST_PREFIX_CHARS, chars); }
+    public void setDigestFields(String fields)  { setProperty(DIGEST_FIELDS, fields); }
+    public void setExpectedDigest(String hex)   { setProperty(EXPECTED_DIGEST, hex); }
+    public void setReplayFile(String file)      { setProperty(REPLAY_FILE, file); }
+    public void setReplaySpeed(String speed)    { setProperty(REPLAY_SPEED, speed); }
+    public void setReplayLoop(boolean loop)     { setProperty(REPLAY_LOOP, loop); }
+    public void setCompiledJsonCodec(boolean on){ setProperty(COMPILED_JSON_CODEC, on); }
+
+    /**
+     * Uses the descriptors embedded in the test plan when present, so remote engines need
+     * neither the .proto files nor protoc; otherwise compiles the proto file.
+     */
+    private ProtoFileParser resolveProtoParser() {
+        String embedded = getProtoDescriptorSet();
+        if (embedded != null && !embedded.isEmpty()) {
+            return getProtoParserForDescriptorSet(getProtoDescriptorHash(), embedded, getProtoFilePath());
+        }
+        String protoPath = getProtoFilePath();
+        if (protoPath == null || protoPath.isEmpty()) {
+            throw new IllegalStateException("Proto file path not set");
+        }
+        return getProtoParserForPath(protoPath);
+    }
 
     public static ProtoFileParser getProtoParserForPath(String protoPath) {
         if (protoPath == null || protoPath.isEmpty()) return null;
@@ -152,9 +518,66 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
         });
     }
 
-    @Override public void testStarted(String host) {}
+    /**
+     * Compiles a proto on the calling thread, outside the shared cache, so an interrupt (GUI
+     * cancel) kills protoc and leaves nothing behind. On success the parser replaces any
+     * cached one for the path.
+     */
+    public static ProtoFileParser compileProtoParser(String protoPath) throws Exception {
+        ProtoFileParser parser = new ProtoFileParser();
+        parser.parseProtoFile(protoPath);
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedException("Proto compilation cancelled");
+        PROTO_CACHE.put(protoPath, parser);
+        return parser;
+    }
+
+    /**
+     * Returns the parser for an embedded, base64-encoded descriptor set. Samplers embedding
+     * the same set share one parser keyed by its SHA-256, so each set is decoded once per JVM.
+     */
+    public static ProtoFileParser getProtoParserForDescriptorSet(String hash, String base64Set, String protoPath) {
+        byte[] bytes = null;
+        if (hash == null || hash.isEmpty()) {
+            bytes = Base64.getDecoder().decode(base64Set);
+            hash = ProtoFileParser.hashDescriptorSet(bytes);
+        }
+        String expectedHash = hash;
+        byte[] decoded = bytes;
+        return PROTO_CACHE.computeIfAbsent("descriptors:" + expectedHash, key -> {
+            byte[] setBytes = decoded != null ? decoded : Base64.getDecoder().decode(base64Set);
+            if (!ProtoFileParser.hashDescriptorSet(setBytes).equals(expectedHash)) {
+                throw new IllegalStateException("Embedded proto descriptors do not match their hash " + expectedHash);
+            }
+            String fileName = protoPath == null || protoPath.trim().isEmpty()
+                    ? null : Paths.get(protoPath.trim()).getFileName().toString();
+            ProtoFileParser p = new ProtoFileParser();
+            try { p.parseDescriptorSet(setBytes, fileName); } catch (Exception ex) { throw new RuntimeException(ex); }
+            log.info("Loaded embedded proto descriptors {} ({} bytes)", expectedHash, setBytes.length);
+            return p;
+        });
+    }
+
+    /** Returns the parser for a proto that has already been compiled, without blocking. */
+    public static ProtoFileParser getCachedProtoParser(String protoPath) {
+        if (protoPath == null || protoPath.isEmpty()) return null;
+        return PROTO_CACHE.get(protoPath);
+    }
+
+    @Override public void testStarted(String host) {
+        ServiceConfig.clearCache();
+        ArrivalScheduler.resetAll();
+        WorkloadReplay.resetAll();
+        if (getWarmUpEnabled()) scheduleWarmUp();
+    }
     @Override public void testStarted() { testStarted(""); }
-    @Override public void testEnded(String host) { if (grpcClient != null) grpcClient.close(); }
+    @Override public void testEnded(String host) {
+        if (grpcClient != null) grpcClient.close();
+        ArrivalScheduler.resetAll();
+        WorkloadReplay.resetAll();
+        EndpointGroup.logSummariesAndReset();
+        ResponseRecorder.closeAll();
+        WarmUp.reset();
+    }
     @Override public void testEnded() { testEnded(""); }
 
     public String getProtoFilePath()  { return getPropertyAsString(PROTO_FILE_PATH); }
@@ -166,4 +589,51 @@ public class GrpcWebSampler extends AbstractSampler implements TestStateListener
     public boolean getUseTextFormat() { return getPropertyAsBoolean(USE_TEXT_FORMAT, false); }
     public String getCustomHeaders()  { return getPropertyAsString(CUSTOM_HEADERS); }
     public boolean getUseRelativePath(){ return getPropertyAsBoolean(USE_RELATIVE_PATH); }
+    public String getServiceConfig()  { return getPropertyAsString(SERVICE_CONFIG); }
+    public boolean getRequireGrpcStatus() { return getPropertyAsBoolean(REQUIRE_GRPC_STATUS, false); }
+    public String getRateMode()       { return getPropertyAsString(RATE_MODE); }
+    public double getRatePerSecond()  { return parseDouble(getPropertyAsString(RATE_PER_SECOND), 1.0); }
+    public double getRateStepIncrement() { return parseDouble(getPropertyAsString(RATE_STEP_INCREMENT), 0.0); }
+    public double getRateStepSeconds(){ return parseDouble(getPropertyAsString(RATE_STEP_SECONDS), 60.0); }
+    public boolean getRateCoCorrection() { return getPropertyAsBoolean(RATE_CO_CORRECTION, false); }
+    public boolean getWarmUpEnabled() { return getPropertyAsBoolean(WARMUP_ENABLED, false); }
+    public int    getWarmUpConnections() { return getPropertyAsInt(WARMUP_CONNECTIONS, 0); }
+    public int    getWarmUpCalls()    { return getPropertyAsInt(WARMUP_CALLS, 0); }
+    public boolean getSharedConnections() { return getPropertyAsBoolean(SHARED_CONNECTIONS, false); }
+
+    /**
+     * Each thread keeps its own connections unless sharing is enabled, or implied by
+     * pre-opening connections, which only helps if threads then use that pool.
+     */
+    private boolean usesSharedConnections() {
+        return getSharedConnections() || (getWarmUpEnabled() && getWarmUpConnections() > 0);
+    }
+    public String getLbPolicy()       { return getPropertyAsString(LB_POLICY); }
+    public boolean getLbResolveAll()  { return getPropertyAsBoolean(LB_RESOLVE_ALL, false); }
+    public boolean getLbLabelByBackend() { return getPropertyAsBoolean(LB_LABEL_BY_BACKEND, false); }
+    public int    getDnsTtlSeconds()  { return getPropertyAsInt(DNS_TTL_SECONDS, 30); }
+    public String getTlsTrustStore()  { return getPropertyAsString(TLS_TRUSTSTORE); }
+    public String getTlsTrustStorePassword() { return getPropertyAsString(TLS_TRUSTSTORE_PASSWORD); }
+    public String getTlsKeyStore()    { return getPropertyAsString(TLS_KEYSTORE); }
+    public String getTlsKeyStorePassword() { return getPropertyAsString(TLS_KEYSTORE_PASSWORD); }
+    public String getTlsProtocols()   { return getPropertyAsString(TLS_PROTOCOLS); }
+    public String getTlsCipherSuites(){ return getPropertyAsString(TLS_CIPHER_SUITES); }
+    public String getRecordFile()     { return getPropertyAsString(RECORD_FILE); }
+    public int    getRecordBufferSize() { return getPropertyAsInt(RECORD_BUFFER_SIZE, 8192); }
+    public boolean getEmbedDescriptors() { return getPropertyAsBoolean(EMBED_DESCRIPTORS, false); }
+    public String getProtoDescriptorSet()  { return getPropertyAsString(PROTO_DESCRIPTOR_SET); }
+    public String getProtoDescriptorHash() { return getPropertyAsString(PROTO_DESCRIPTOR_HASH); }
+    public String getResponseMode()   { return getPropertyAsString(RESPONSE_MODE, RESPONSE_MODE_FULL).toLowerCase(Locale.ROOT); }
+    public int    getDigestPrefixChars() { return getPropertyAsInt(DIGEST_PREFIX_CHARS, 1024); }
+    public String getDigestFields()   { return getPropertyAsString(DIGEST_FIELDS); }
+    public String getExpectedDigest() { return getPropertyAsString(EXPECTED_DIGEST); }
+    public String getReplayFile()     { return getPropertyAsString(REPLAY_FILE); }
+    public double getReplaySpeed()    { return parseDouble(getPropertyAsString(REPLAY_SPEED), 1.0); }
+    public boolean getReplayLoop()    { return getPropertyAsBoolean(REPLAY_LOOP, false); }
+    public boolean getCompiledJsonCodec() { return getPropertyAsBoolean(COMPILED_JSON_CODEC, false); }
+
+    private static double parseDouble(String value, double defaultValue) {
+        if (value == null || value.trim().isEmpty()) return defaultValue;
+        return Double.parseDouble(value.trim());
+    }
 }
@@ -0,0 +1,85 @@
+package com.badru.jmeter.grpcweb.sampler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test-wide warm-up phase. Samplers submit their warm-up work from {@code testStarted},
+ * where it runs in parallel on a small pool; every sampler thread waits for all of it
+ * to finish before its first recorded sample.
+ */
+public class WarmUp {
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final List<Future<?>> TASKS = new CopyOnWriteArrayList<>();
+    private static final Set<String> CLAIMED = ConcurrentHashMap.newKeySet();
+    private static ExecutorService executor;
+    private static volatile boolean completed = true;
+
+    private WarmUp() {}
+
+    /**
+     * Returns {@code true} the first time {@code key} is claimed in a run, so work shared
+     * by several samplers (e.g. pre-opening connections to one server) is done once.
+     */
+    static boolean claim(String key) {
+        return CLAIMED.add(key);
+    }
+
+    static synchronized void submit(String description, Callable<?> task) {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "grpcweb-warmup-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        completed = false;
+        TASKS.add(executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                task.call();
+                log.info("[Warm-up] {} done in {} ms", description, System.currentTimeMillis() - start);
+            } catch (Exception ex) {
+                log.warn("[Warm-up] {} failed: {}", description, ex.toString());
+            }
+        }));
+    }
+
+    /** Blocks until all submitted warm-up work has finished. */
+    static void awaitCompletion() throws InterruptedException {
+        if (completed) return;
+        for (Future<?> task : TASKS) {
+            try {
+                task.get();
+            } catch (ExecutionException ex) {
+                // failures are logged by the task itself
+            }
+        }
+        completed = true;
+    }
+
+    /** Stops the warm-up pool and forgets this run's work. */
+    static synchronized void reset() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        TASKS.clear();
+        CLAIMED.clear();
+        completed = true;
+    }
+}
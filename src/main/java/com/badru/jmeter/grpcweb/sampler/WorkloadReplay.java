@@ -0,0 +1,111 @@
+package com.badru.jmeter.grpcweb.sampler;
+
+import com.badru.jmeter.grpcweb.util.WorkloadFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a captured workload at N times its original speed. Every thread of every sampler
+ * replaying the same file shares one cursor: a thread takes the next request and parks
+ * until its original offset (divided by the speed) has passed since the replay started.
+ * With too few threads, requests start late; the delay is reported as scheduling lag.
+ */
+public class WorkloadReplay {
+    private static final Logger log = LoggerFactory.getLogger(WorkloadReplay.class);
+    private static final Map<String, WorkloadReplay> REPLAYS = new ConcurrentHashMap<>();
+
+    private final String file;
+    private final List<WorkloadFile.Entry> entries;
+    private final double speed;
+    private final boolean loop;
+    private final long passMillis;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong startNanos = new AtomicLong();
+    private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0L);
+
+    private WorkloadReplay(String file, List<WorkloadFile.Entry> entries, double speed, boolean loop) {
+        this.file = file;
+        this.entries = entries;
+        this.speed = speed > 0 ? speed : 1.0;
+        this.loop = loop;
+        // A looped pass lasts as long as the capture plus one average gap between requests
+        long last = entries.isEmpty() ? 0L : entries.get(entries.size() - 1).getOffsetMillis();
+        this.passMillis = entries.size() > 1 ? Math.max(1L, last + last / (entries.size() - 1)) : 1000L;
+    }
+
+    /** Returns the replay shared by all samplers using this file and settings, loading the file once. */
+    public static WorkloadReplay forFile(String file, double speed, boolean loop) {
+        return REPLAYS.computeIfAbsent(file + "|" + speed + "|" + loop, key -> {
+            try {
+                List<WorkloadFile.Entry> entries = WorkloadFile.read(Paths.get(file));
+                log.info("[Replay] {}: {} requests loaded, replaying at {}x", file, entries.size(), speed);
+                return new WorkloadReplay(file, entries, speed, loop);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot read workload " + file, ex);
+            }
+        });
+    }
+
+    /** Logs how far behind schedule each replay got and forgets them, so the next test starts over. */
+    public static void resetAll() {
+        for (WorkloadReplay replay : REPLAYS.values()) {
+            log.info("[Replay] {}: {} requests taken, max lag {} ms", replay.file,
+                    replay.cursor.get(), TimeUnit.NANOSECONDS.toMillis(replay.maxLagNanos.get()));
+        }
+        REPLAYS.clear();
+    }
+
+    /**
+     * Takes the next request and waits until it is due. Returns {@code null} once every
+     * request has been taken and the replay does not loop, and a cancelled result if the
+     * thread is interrupted while waiting.
+     */
+    public Scheduled next() {
+        long index = cursor.getAndIncrement();
+        int size = entries.size();
+        if (size == 0 || (!loop && index >= size)) return null;
+
+        startNanos.compareAndSet(0L, System.nanoTime());
+        WorkloadFile.Entry entry = entries.get((int) (index % size));
+        long offsetMillis = (index / size) * passMillis + entry.getOffsetMillis();
+        long due = startNanos.get() + (long) (TimeUnit.MILLISECONDS.toNanos(offsetMillis) / speed);
+
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) return new Scheduled(entry, 0L, true);
+        }
+        long lag = Math.max(0L, System.nanoTime() - due);
+        maxLagNanos.accumulate(lag);
+        return new Scheduled(entry, lag, false);
+    }
+
+    /** A request taken from the replay, with how late it is starting. */
+    public static class Scheduled {
+        private final WorkloadFile.Entry entry;
+        private final long lagNanos;
+        private final boolean cancelled;
+
+        Scheduled(WorkloadFile.Entry entry, long lagNanos, boolean cancelled) {
+            this.entry = entry;
+            this.lagNanos = lagNanos;
+            this.cancelled = cancelled;
+        }
+
+        public WorkloadFile.Entry getEntry() { return entry; }
+        public long getLagNanos() { return lagNanos; }
+        /** Whether the thread was interrupted before the request was due; it must not be sent. */
+        public boolean isCancelled() { return cancelled; }
+    }
+}
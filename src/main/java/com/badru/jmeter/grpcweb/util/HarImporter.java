@@ -0,0 +1,174 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts the gRPC-Web calls of a browser session exported as HAR into a
+ * {@link WorkloadFile}. Each request body is decoded with the proto's descriptors, which
+ * validates it and gives a readable JSON form, and is stored re-framed in binary gRPC-Web
+ * with its original offset from the first call:
+ *
+ * <pre>
+ * java -cp jmeter-grpc-web-plugin.jar com.badru.jmeter.grpcweb.util.HarImporter session.har service.proto workload.bin
+ * </pre>
+ *
+ * Request headers are not kept: cookies and tokens from the capture have usually expired,
+ * and the sampler's custom headers are sent instead.
+ */
+public class HarImporter {
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+
+    private HarImporter() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: HarImporter <capture.har> <proto file> <workload file>");
+            System.exit(2);
+        }
+        ProtoFileParser parser = new ProtoFileParser();
+        parser.parseProtoFile(args[1]);
+        int imported = importHar(Paths.get(args[0]), parser, Paths.get(args[2]));
+        System.out.println("Imported " + imported + " gRPC-Web request(s) into " + args[2]);
+    }
+
+    /**
+     * Writes the gRPC-Web calls of {@code har} whose services are in {@code parser} to
+     * {@code workload}. Calls that cannot be decoded are reported on stderr and skipped.
+     *
+     * @return the number of calls written
+     */
+    public static int importHar(Path har, ProtoFileParser parser, Path workload) throws IOException {
+        JsonObject root;
+        try (Reader reader = Files.newBufferedReader(har, StandardCharsets.UTF_8)) {
+            root = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonArray harEntries = root.getAsJsonObject("log").getAsJsonArray("entries");
+
+        List<long[]> order = new ArrayList<>();
+        List<WorkloadFile.Entry> decoded = new ArrayList<>();
+        for (JsonElement element : harEntries) {
+            JsonObject entry = element.getAsJsonObject();
+            JsonObject request = entry.getAsJsonObject("request");
+            String contentType = contentType(request);
+            if (!"POST".equalsIgnoreCase(string(request, "method"))
+                    || !contentType.startsWith("application/grpc-web")) {
+                continue;
+            }
+            String url = string(request, "url");
+            try {
+                long startedAt = OffsetDateTime.parse(string(entry, "startedDateTime")).toInstant().toEpochMilli();
+                WorkloadFile.Entry call = decodeCall(url, request, contentType, parser);
+                order.add(new long[] {startedAt, decoded.size()});
+                decoded.add(call);
+            } catch (Exception ex) {
+                System.err.println("Skipping " + url + ": " + ex.getMessage());
+            }
+        }
+
+        // Browsers usually list entries in start order, but HAR does not require it
+        order.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<WorkloadFile.Entry> entries = new ArrayList<>(order.size());
+        long first = order.isEmpty() ? 0L : order.get(0)[0];
+        for (long[] item : order) {
+            WorkloadFile.Entry call = decoded.get((int) item[1]);
+            entries.add(new WorkloadFile.Entry(item[0] - first, call.getMethod(), call.getFrames(), call.getJson()));
+        }
+        WorkloadFile.write(workload, entries);
+        return entries.size();
+    }
+
+    private static WorkloadFile.Entry decodeCall(String url, JsonObject request, String contentType,
+                                                 ProtoFileParser parser) throws Exception {
+        String path = new URI(url).getPath();
+        int slash = path.lastIndexOf('/');
+        if (slash <= 0) throw new IllegalArgumentException("not a gRPC-Web method path");
+        String fullService = path.substring(path.lastIndexOf('/', slash - 1) + 1, slash);
+        String service = fullService.substring(fullService.lastIndexOf('.') + 1);
+        String method = path.substring(slash + 1);
+
+        JsonObject postData = request.getAsJsonObject("postData");
+        if (postData == null || !postData.has("text")) throw new IllegalArgumentException("no request body captured");
+        byte[] body = requestBody(postData, contentType);
+
+        Descriptors.Descriptor inputType = parser.getMethodDescriptor(service, method).getInputType();
+        DynamicMessage message = DynamicMessage.parseFrom(inputType, firstDataFrame(body));
+        byte[] messageBytes = message.toByteArray();
+        byte[] frames = ByteBuffer.allocate(5 + messageBytes.length)
+                .put((byte) 0)
+                .putInt(messageBytes.length)
+                .put(messageBytes)
+                .array();
+        return new WorkloadFile.Entry(0L, fullService + "/" + method, frames, PRINTER.print(message));
+    }
+
+    /**
+     * The captured body bytes, for grpc-web-text or when the HAR marks the body as base64.
+     * Other binary bodies were stored as text by the browser, which loses bytes that are
+     * not valid characters, so they cannot be recovered.
+     */
+    private static byte[] requestBody(JsonObject postData, String contentType) {
+        String text = string(postData, "text");
+        String encoding = postData.has("encoding") ? string(postData, "encoding") : string(postData, "_encoding");
+        if (contentType.startsWith("application/grpc-web-text") || "base64".equalsIgnoreCase(encoding)) {
+            return Base64.getMimeDecoder().decode(text);
+        }
+        throw new IllegalArgumentException("binary " + contentType + " body is not base64-encoded in the HAR;"
+                + " export the capture with base64 bodies or use grpc-web-text");
+    }
+
+    /** The payload of the first data frame of a binary gRPC-Web body, skipping trailer frames. */
+    static byte[] firstDataFrame(byte[] body) {
+        int pos = 0;
+        while (pos + 5 <= body.length) {
+            int flag = body[pos] & 0xFF;
+            int len = ((body[pos + 1] & 0xFF) << 24) | ((body[pos + 2] & 0xFF) << 16)
+                    | ((body[pos + 3] & 0xFF) << 8) | (body[pos + 4] & 0xFF);
+            if (len < 0 || pos + 5 + len > body.length) {
+                throw new IllegalArgumentException("truncated gRPC-Web frame");
+            }
+            if ((flag & 0x80) == 0) return Arrays.copyOfRange(body, pos + 5, pos + 5 + len);
+            pos += 5 + len;
+        }
+        throw new IllegalArgumentException("no gRPC-Web data frame in request body");
+    }
+
+    private static String contentType(JsonObject request) {
+        JsonArray headers = request.getAsJsonArray("headers");
+        if (headers != null) {
+            for (JsonElement header : headers) {
+                JsonObject h = header.getAsJsonObject();
+                if ("content-type".equalsIgnoreCase(string(h, "name"))) {
+                    return string(h, "value").toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        JsonObject postData = request.getAsJsonObject("postData");
+        return postData != null ? string(postData, "mimeType").toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String string(JsonObject obj, String name) {
+        JsonElement value = obj.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : "";
+    }
+}
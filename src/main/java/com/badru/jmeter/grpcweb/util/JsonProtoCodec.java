@@ -0,0 +1,855 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.WireFormat;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts between JSON and protobuf wire bytes for one message type without building a
+ * {@link DynamicMessage}. Field names are resolved once per type into lookup tables;
+ * requests are written from a streaming {@link JsonReader} straight into wire format, and
+ * responses are printed from wire bytes straight to text.
+ *
+ * <p>It accepts the same JSON as {@code JsonFormat.parser().ignoringUnknownFields()} (JSON
+ * or proto field names, unknown fields and enum values skipped, a field or oneof set twice
+ * rejected) and prints the same text as {@code JsonFormat.printer().includingDefaultValueFields()}.
+ * Well-known types such as {@code Timestamp}, {@code Struct} or {@code Any}, whose JSON form
+ * is special, are delegated to {@code JsonFormat}.
+ */
+public final class JsonProtoCodec {
+    private static final Map<Descriptors.Descriptor, JsonProtoCodec> CODECS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final JsonFormat.Parser WKT_PARSER = JsonFormat.parser().ignoringUnknownFields();
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().includingDefaultValueFields();
+    private static final int MAX_DENSE_FIELD_NUMBER = 4096;
+    private static final BigInteger MAX_UINT64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private final Descriptors.Descriptor type;
+    private final boolean wellKnown;
+    private final Map<String, FieldInfo> fieldsByName = new HashMap<>();
+    private final FieldInfo[] fieldsByNumber;
+    private final Map<Integer, FieldInfo> sparseFieldsByNumber;
+    private final FieldInfo[] printOrder;
+    private final int oneofCount;
+
+    private JsonProtoCodec(Descriptors.Descriptor type) {
+        this.type = type;
+        this.wellKnown = type.getFullName().startsWith("google.protobuf.")
+                && !type.getFullName().equals("google.protobuf.Empty");
+        this.oneofCount = type.getOneofs().size();
+
+        List<Descriptors.FieldDescriptor> fields = new ArrayList<>(type.getFields());
+        fields.sort(Comparator.comparingInt(Descriptors.FieldDescriptor::getNumber));
+        printOrder = new FieldInfo[fields.size()];
+        int maxNumber = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo info = new FieldInfo(fields.get(i), i);
+            printOrder[i] = info;
+            fieldsByName.put(info.field.getName(), info);
+            fieldsByName.put(info.field.getJsonName(), info);
+            maxNumber = Math.max(maxNumber, info.number);
+        }
+        for (FieldInfo info : printOrder) {
+            info.linkOneofSiblings(printOrder);
+        }
+        if (maxNumber <= MAX_DENSE_FIELD_NUMBER) {
+            fieldsByNumber = new FieldInfo[maxNumber + 1];
+            for (FieldInfo info : printOrder) fieldsByNumber[info.number] = info;
+            sparseFieldsByNumber = null;
+        } else {
+            fieldsByNumber = null;
+            sparseFieldsByNumber = new HashMap<>();
+            for (FieldInfo info : printOrder) sparseFieldsByNumber.put(info.number, info);
+        }
+    }
+
+    /** Returns the codec for {@code type}, compiling it on first use. */
+    public static JsonProtoCodec forType(Descriptors.Descriptor type) {
+        JsonProtoCodec codec = CODECS.get(type);
+        if (codec == null) {
+            // Not computeIfAbsent: nested types are compiled lazily and may be reached recursively
+            codec = new JsonProtoCodec(type);
+            JsonProtoCodec existing = CODECS.putIfAbsent(type, codec);
+            if (existing != null) codec = existing;
+        }
+        return codec;
+    }
+
+    public Descriptors.Descriptor getType() { return type; }
+
+    // ---------------------------------------------------------------- JSON -> wire
+
+    /** Encodes a JSON object as this type's wire bytes. */
+    public byte[] jsonToBytes(String json) throws IOException {
+        if (wellKnown) return parseWellKnown(json);
+        JsonReader reader = new JsonReader(new StringReader(json));
+        Scratch scratch = SCRATCH.get();
+        try {
+            Level level = scratch.at(0);
+            writeMessage(reader, level.out, scratch, 0);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after the JSON object");
+            }
+            level.out.flush();
+            return level.toByteArray();
+        } catch (IOException | RuntimeException ex) {
+            // Buffers may hold unflushed bytes of the failed message; start over with fresh ones
+            SCRATCH.remove();
+            throw ex;
+        }
+    }
+
+    private void writeMessage(JsonReader reader, CodedOutputStream out, Scratch scratch, int depth) throws IOException {
+        boolean[] set = new boolean[printOrder.length];
+        FieldInfo[] oneofsSet = oneofCount > 0 ? new FieldInfo[oneofCount] : null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            FieldInfo f = fieldsByName.get(reader.nextName());
+            if (f == null) {
+                reader.skipValue();
+                continue;
+            }
+            // JsonFormat rejects a field given twice (e.g. by proto and JSON name) and a second member of a oneof
+            if (set[f.slot]) {
+                throw new IOException("Field " + f.field.getFullName() + " has already been set.");
+            }
+            if (f.oneofIndex >= 0 && oneofsSet[f.oneofIndex] != null) {
+                throw new IOException("Cannot set field " + f.field.getFullName() + " because another field "
+                        + oneofsSet[f.oneofIndex].field.getFullName() + " belonging to the same oneof has already been set.");
+            }
+            if (reader.peek() == JsonToken.NULL && !f.nullable) {
+                // null means unset, except for google.protobuf.Value
+                reader.skipValue();
+                continue;
+            }
+            set[f.slot] = true;
+            if (f.oneofIndex >= 0) oneofsSet[f.oneofIndex] = f;
+            if (reader.peek() == JsonToken.NULL) {
+                out.writeByteArray(f.number, f.codec().parseWellKnown(JsonParser.parseReader(reader).toString()));
+            } else if (f.map) {
+                writeMap(reader, out, f, scratch, depth);
+            } else if (f.repeated) {
+                writeRepeated(reader, out, f, scratch, depth);
+            } else {
+                writeValue(reader, out, f, scratch, depth);
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void writeRepeated(JsonReader reader, CodedOutputStream out, FieldInfo f,
+                                      Scratch scratch, int depth) throws IOException {
+        reader.beginArray();
+        if (f.packed) {
+            Level level = scratch.at(depth + 1);
+            while (reader.hasNext()) {
+                if (f.type == Descriptors.FieldDescriptor.Type.ENUM) {
+                    Integer value = readEnum(reader, f);
+                    if (value != null) level.out.writeEnumNoTag(value);
+                } else {
+                    writeScalarNoTag(reader, level.out, f.type);
+                }
+            }
+            if (level.flushedSize() > 0) level.writeTo(out, f.number);
+        } else {
+            while (reader.hasNext()) {
+                writeValue(reader, out, f, scratch, depth);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static void writeMap(JsonReader reader, CodedOutputStream out, FieldInfo f,
+                                 Scratch scratch, int depth) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL && !f.mapValue.nullable) {
+                throw new IOException("Map value for key '" + key + "' of " + f.field.getFullName() + " is null");
+            }
+            Level level = scratch.at(depth + 1);
+            if (f.mapValue.type == Descriptors.FieldDescriptor.Type.ENUM) {
+                // Like JsonFormat, drop the whole entry when its enum value is unknown
+                Integer value = readEnum(reader, f.mapValue);
+                if (value == null) continue;
+                writeMapKey(key, level.out, f.mapKey);
+                level.out.writeEnum(f.mapValue.number, value);
+            } else {
+                writeMapKey(key, level.out, f.mapKey);
+                writeValue(reader, level.out, f.mapValue, scratch, depth + 1);
+            }
+            level.writeTo(out, f.number);
+        }
+        reader.endObject();
+    }
+
+    private static void writeMapKey(String key, CodedOutputStream out, FieldInfo keyField) throws IOException {
+        int n = keyField.number;
+        switch (keyField.type) {
+            case STRING: out.writeString(n, key); break;
+            case BOOL:
+                if (!key.equals("true") && !key.equals("false")) throw new IOException("Invalid bool map key: " + key);
+                out.writeBool(n, Boolean.parseBoolean(key));
+                break;
+            default:
+                out.writeTag(n, keyField.wireType);
+                writeScalarNoTag(key, out, keyField.type);
+        }
+    }
+
+    private static void writeValue(JsonReader reader, CodedOutputStream out, FieldInfo f,
+                                   Scratch scratch, int depth) throws IOException {
+        int n = f.number;
+        switch (f.type) {
+            case STRING:
+                out.writeString(n, reader.nextString());
+                break;
+            case BYTES:
+                out.writeByteArray(n, readBytes(reader.nextString()));
+                break;
+            case ENUM: {
+                Integer value = readEnum(reader, f);
+                if (value != null) out.writeEnum(n, value);
+                break;
+            }
+            case MESSAGE: {
+                JsonProtoCodec nested = f.codec();
+                if (nested.wellKnown) {
+                    out.writeByteArray(n, nested.parseWellKnown(JsonParser.parseReader(reader).toString()));
+                } else {
+                    Level level = scratch.at(depth + 1);
+                    nested.writeMessage(reader, level.out, scratch, depth + 1);
+                    level.writeTo(out, n);
+                }
+                break;
+            }
+            case GROUP:
+                throw new IOException("Groups are not supported: " + f.field.getFullName());
+            case BOOL:
+                out.writeBool(n, readBool(reader));
+                break;
+            default:
+                out.writeTag(n, f.wireType);
+                writeScalarNoTag(readNumber(reader), out, f.type);
+        }
+    }
+
+    private static void writeScalarNoTag(JsonReader reader, CodedOutputStream out,
+                                         Descriptors.FieldDescriptor.Type type) throws IOException {
+        if (type == Descriptors.FieldDescriptor.Type.BOOL) {
+            out.writeBoolNoTag(readBool(reader));
+        } else {
+            writeScalarNoTag(readNumber(reader), out, type);
+        }
+    }
+
+    private static void writeScalarNoTag(String text, CodedOutputStream out,
+                                         Descriptors.FieldDescriptor.Type type) throws IOException {
+        switch (type) {
+            case INT32: out.writeInt32NoTag(parseInt32(text)); break;
+            case SINT32: out.writeSInt32NoTag(parseInt32(text)); break;
+            case SFIXED32: out.writeSFixed32NoTag(parseInt32(text)); break;
+            case UINT32: out.writeUInt32NoTag(parseUInt32(text)); break;
+            case FIXED32: out.writeFixed32NoTag(parseUInt32(text)); break;
+            case INT64: out.writeInt64NoTag(parseInt64(text)); break;
+            case SINT64: out.writeSInt64NoTag(parseInt64(text)); break;
+            case SFIXED64: out.writeSFixed64NoTag(parseInt64(text)); break;
+            case UINT64: out.writeUInt64NoTag(parseUInt64(text)); break;
+            case FIXED64: out.writeFixed64NoTag(parseUInt64(text)); break;
+            case FLOAT: out.writeFloatNoTag((float) Double.parseDouble(text)); break;
+            case DOUBLE: out.writeDoubleNoTag(Double.parseDouble(text)); break;
+            case BOOL: out.writeBoolNoTag(Boolean.parseBoolean(text)); break;
+            default: throw new IOException("Not a scalar type: " + type);
+        }
+    }
+
+    /** Numbers may be written as JSON numbers or strings (as int64 values usually are). */
+    private static String readNumber(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw new IOException("Expected a number at " + reader.getPath() + " but was " + token);
+        }
+        return reader.nextString();
+    }
+
+    private static boolean readBool(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            String text = reader.nextString();
+            if (!text.equals("true") && !text.equals("false")) throw new IOException("Invalid bool value: " + text);
+            return Boolean.parseBoolean(text);
+        }
+        return reader.nextBoolean();
+    }
+
+    /**
+     * Returns the enum number for a name or number (as JSON number or string), or {@code null}
+     * for an unknown name, or an unknown number of a closed enum, which is skipped like an unknown field.
+     */
+    private static Integer readEnum(JsonReader reader, FieldInfo f) throws IOException {
+        String text = reader.nextString();
+        Descriptors.EnumValueDescriptor value = f.field.getEnumType().findValueByName(text);
+        if (value != null) return value.getNumber();
+        int number;
+        try {
+            number = parseInt32(text);
+        } catch (IOException ex) {
+            return null;
+        }
+        return f.closedEnum && f.field.getEnumType().findValueByNumber(number) == null ? null : number;
+    }
+
+    private static byte[] readBytes(String text) {
+        try {
+            return Base64.getDecoder().decode(text);
+        } catch (IllegalArgumentException ex) {
+            return Base64.getUrlDecoder().decode(text);
+        }
+    }
+
+    private static long parseInt64(String text) throws IOException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException ex) {
+            try {
+                return new BigDecimal(text).longValueExact();
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IOException("Not an int64 value: " + text);
+            }
+        }
+    }
+
+    private static int parseInt32(String text) throws IOException {
+        long value = parseInt64(text);
+        if (value != (int) value) throw new IOException("Out of range for int32: " + text);
+        return (int) value;
+    }
+
+    private static int parseUInt32(String text) throws IOException {
+        long value = parseInt64(text);
+        if (value < 0 || value > 0xFFFFFFFFL) throw new IOException("Out of range for uint32: " + text);
+        return (int) value;
+    }
+
+    private static long parseUInt64(String text) throws IOException {
+        BigInteger value;
+        try {
+            value = new BigDecimal(text).toBigIntegerExact();
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new IOException("Not a uint64 value: " + text);
+        }
+        if (value.signum() < 0 || value.compareTo(MAX_UINT64) > 0) throw new IOException("Out of range for uint64: " + text);
+        return value.longValue();
+    }
+
+    private byte[] parseWellKnown(String json) throws IOException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(type);
+        WKT_PARSER.merge(json, builder);
+        return builder.build().toByteArray();
+    }
+
+    // ---------------------------------------------------------------- wire -> JSON
+
+    /** Prints this type's wire bytes as pretty JSON, including fields set to their defaults. */
+    public String bytesToJson(byte[] bytes) throws IOException {
+        if (wellKnown) return PRINTER.print(DynamicMessage.parseFrom(type, bytes));
+        Out out = new Out(bytes.length * 2 + 16);
+        print(CodedInputStream.newInstance(bytes), out);
+        return out.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void print(CodedInputStream in, Out out) throws IOException {
+        Object[] values = new Object[printOrder.length];
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            FieldInfo f = field(WireFormat.getTagFieldNumber(tag));
+            int wireType = WireFormat.getTagWireType(tag);
+            if (f == null) {
+                in.skipField(tag);
+            } else if (f.repeated) {
+                List<Object> list = (List<Object>) values[f.slot];
+                if (list == null) values[f.slot] = list = new ArrayList<>();
+                if (f.packable && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    while (in.getBytesUntilLimit() > 0) {
+                        Object value = readValue(in, f);
+                        if (!isUnknownClosedEnum(value, f)) list.add(value);
+                    }
+                    in.popLimit(limit);
+                } else if (wireType == f.wireType) {
+                    Object value = readValue(in, f);
+                    if (!isUnknownClosedEnum(value, f)) list.add(value);
+                } else {
+                    in.skipField(tag);
+                }
+            } else if (wireType == f.wireType) {
+                Object value = readValue(in, f);
+                // protobuf keeps unknown values of closed (proto2) enums as unknown fields
+                if (isUnknownClosedEnum(value, f)) continue;
+                Object previous = values[f.slot];
+                if (previous instanceof ByteString && f.type == Descriptors.FieldDescriptor.Type.MESSAGE) {
+                    // Repeated occurrences of a message field merge, which concatenation does
+                    value = ((ByteString) previous).concat((ByteString) value);
+                }
+                for (int sibling : f.oneofSiblingSlots) values[sibling] = null;
+                values[f.slot] = value;
+            } else {
+                in.skipField(tag);
+            }
+        }
+
+        // Same layout as JsonFormat's pretty printer: fields in number order, one per line,
+        // unset message and oneof fields left out
+        out.text("{").newline().indent();
+        boolean printed = false;
+        for (FieldInfo f : printOrder) {
+            Object value = values[f.slot];
+            if (value == null && !f.repeated
+                    && (f.type == Descriptors.FieldDescriptor.Type.MESSAGE || f.oneofIndex >= 0)) {
+                continue;
+            }
+            if (printed) out.text(",").newline();
+            printed = true;
+            out.text(f.nameText);
+            if (f.map) {
+                printMap((List<Object>) value, f, out);
+            } else if (f.repeated) {
+                out.text("[");
+                if (value != null) {
+                    boolean first = true;
+                    for (Object element : (List<Object>) value) {
+                        if (!first) out.text(", ");
+                        first = false;
+                        printValue(element, f, out);
+                    }
+                }
+                out.text("]");
+            } else {
+                printValue(value != null ? value : f.defaultValue, f, out);
+            }
+        }
+        if (printed) out.newline();
+        out.outdent().text("}");
+    }
+
+    private static void printMap(List<Object> entries, FieldInfo f, Out out) throws IOException {
+        out.text("{").newline().indent();
+        boolean printed = false;
+        if (entries != null) {
+            for (Object entry : entries) {
+                if (printMapEntry((ByteString) entry, f, out, printed)) printed = true;
+            }
+        }
+        if (printed) out.newline();
+        out.outdent().text("}");
+    }
+
+    /** Prints one entry, preceded by a separator unless it is the first; returns whether it was printed. */
+    private static boolean printMapEntry(ByteString entry, FieldInfo f, Out out, boolean separate) throws IOException {
+        Object key = f.mapKey.defaultValue;
+        Object value = null;
+        CodedInputStream in = entry.newCodedInput();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            int number = WireFormat.getTagFieldNumber(tag);
+            int wireType = WireFormat.getTagWireType(tag);
+            if (number == f.mapKey.number && wireType == f.mapKey.wireType) {
+                key = readValue(in, f.mapKey);
+            } else if (number == f.mapValue.number && wireType == f.mapValue.wireType) {
+                value = readValue(in, f.mapValue);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        // protobuf keeps a whole entry with an unknown closed enum value as an unknown field
+        if (isUnknownClosedEnum(value, f.mapValue)) return false;
+        if (value == null) {
+            value = f.mapValue.type == Descriptors.FieldDescriptor.Type.MESSAGE ? ByteString.EMPTY : f.mapValue.defaultValue;
+        }
+        if (separate) out.text(",").newline();
+        out.string(mapKeyText(key, f.mapKey)).text(": ");
+        printValue(value, f.mapValue, out);
+        return true;
+    }
+
+    private static String mapKeyText(Object key, FieldInfo keyField) {
+        switch (keyField.type) {
+            case UINT32:
+            case FIXED32: return Long.toString(Integer.toUnsignedLong((Integer) key));
+            case UINT64:
+            case FIXED64: return Long.toUnsignedString((Long) key);
+            default: return String.valueOf(key);
+        }
+    }
+
+    private static boolean isUnknownClosedEnum(Object value, FieldInfo f) {
+        return f.closedEnum && value != null && f.field.getEnumType().findValueByNumber((Integer) value) == null;
+    }
+
+    private static Object readValue(CodedInputStream in, FieldInfo f) throws IOException {
+        switch (f.type) {
+            case INT32: return in.readInt32();
+            case SINT32: return in.readSInt32();
+            case SFIXED32: return in.readSFixed32();
+            case UINT32: return in.readUInt32();
+            case FIXED32: return in.readFixed32();
+            case INT64: return in.readInt64();
+            case SINT64: return in.readSInt64();
+            case SFIXED64: return in.readSFixed64();
+            case UINT64: return in.readUInt64();
+            case FIXED64: return in.readFixed64();
+            case FLOAT: return in.readFloat();
+            case DOUBLE: return in.readDouble();
+            case BOOL: return in.readBool();
+            case STRING: return in.readString();
+            case ENUM: return in.readEnum();
+            case BYTES:
+            case MESSAGE: return in.readBytes();
+            default: throw new IOException("Groups are not supported: " + f.field.getFullName());
+        }
+    }
+
+    private static void printValue(Object value, FieldInfo f, Out out) throws IOException {
+        switch (f.type) {
+            case INT32:
+            case SINT32:
+            case SFIXED32:
+                out.text(value.toString());
+                break;
+            case UINT32:
+            case FIXED32:
+                out.text(Long.toString(Integer.toUnsignedLong((Integer) value)));
+                break;
+            case INT64:
+            case SINT64:
+            case SFIXED64:
+                out.text("\"").text(value.toString()).text("\"");
+                break;
+            case UINT64:
+            case FIXED64:
+                out.text("\"").text(Long.toUnsignedString((Long) value)).text("\"");
+                break;
+            case FLOAT: {
+                float v = (Float) value;
+                if (Float.isNaN(v) || Float.isInfinite(v)) out.text("\"").text(Float.toString(v)).text("\"");
+                else out.text(Float.toString(v));
+                break;
+            }
+            case DOUBLE: {
+                double v = (Double) value;
+                if (Double.isNaN(v) || Double.isInfinite(v)) out.text("\"").text(Double.toString(v)).text("\"");
+                else out.text(Double.toString(v));
+                break;
+            }
+            case BOOL:
+                out.text((Boolean) value ? "true" : "false");
+                break;
+            case STRING:
+                out.string((String) value);
+                break;
+            case BYTES:
+                out.text("\"").text(Base64.getEncoder().encodeToString(((ByteString) value).toByteArray())).text("\"");
+                break;
+            case ENUM: {
+                if (f.nullValueEnum) {
+                    out.text("null");
+                    break;
+                }
+                int number = (Integer) value;
+                Descriptors.EnumValueDescriptor enumValue = f.field.getEnumType().findValueByNumber(number);
+                if (enumValue != null) out.text("\"").text(enumValue.getName()).text("\"");
+                else out.text(Integer.toString(number));
+                break;
+            }
+            case MESSAGE: {
+                JsonProtoCodec nested = f.codec();
+                ByteString bytes = (ByteString) value;
+                if (nested.wellKnown) {
+                    // JsonFormat writes its own indentation after each line break; Out adds ours in front
+                    PRINTER.appendTo(DynamicMessage.parseFrom(nested.type, bytes), out);
+                } else {
+                    nested.print(bytes.newCodedInput(), out);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Groups are not supported: " + f.field.getFullName());
+        }
+    }
+
+    private FieldInfo field(int number) {
+        if (fieldsByNumber != null) {
+            return number < fieldsByNumber.length ? fieldsByNumber[number] : null;
+        }
+        return sparseFieldsByNumber.get(number);
+    }
+
+    /** Per-field data resolved once when the codec is compiled. */
+    private static final class FieldInfo {
+        final Descriptors.FieldDescriptor field;
+        final Descriptors.FieldDescriptor.Type type;
+        final int number;
+        final int slot;
+        final int wireType;
+        final String jsonName;
+        /** {@code "jsonName": }, as printed before the value. */
+        final String nameText;
+        /** Index of the containing oneof (including the synthetic one of a proto3 optional field), or -1. */
+        final int oneofIndex;
+        final boolean repeated;
+        final boolean map;
+        final boolean packable;
+        final boolean packed;
+        /** Unknown numbers of closed (proto2) enums are not kept as field values. */
+        final boolean closedEnum;
+        /** {@code google.protobuf.NullValue}, printed as {@code null}. */
+        final boolean nullValueEnum;
+        /** {@code google.protobuf.Value}, for which JSON {@code null} is a value rather than "unset". */
+        final boolean nullable;
+        final Object defaultValue;
+        final FieldInfo mapKey;
+        final FieldInfo mapValue;
+        int[] oneofSiblingSlots = new int[0];
+        private volatile JsonProtoCodec codec;
+
+        FieldInfo(Descriptors.FieldDescriptor field, int slot) {
+            this.field = field;
+            this.type = field.getType();
+            this.number = field.getNumber();
+            this.slot = slot;
+            this.wireType = field.getLiteType().getWireType();
+            this.jsonName = field.getJsonName();
+            this.nameText = "\"" + jsonName + "\": ";
+            this.oneofIndex = field.getContainingOneof() != null ? field.getContainingOneof().getIndex() : -1;
+            this.repeated = field.isRepeated();
+            this.map = field.isMapField();
+            this.packable = field.isPackable();
+            this.packed = field.isPacked();
+            boolean isEnum = type == Descriptors.FieldDescriptor.Type.ENUM;
+            this.closedEnum = isEnum
+                    && (!isProto3(field.getFile()) || !isProto3(field.getEnumType().getFile()));
+            this.nullValueEnum = isEnum && field.getEnumType().getFullName().equals("google.protobuf.NullValue");
+            this.nullable = !repeated && type == Descriptors.FieldDescriptor.Type.MESSAGE
+                    && field.getMessageType().getFullName().equals("google.protobuf.Value");
+            Object defaultValue = null;
+            if (!repeated && type != Descriptors.FieldDescriptor.Type.MESSAGE
+                    && type != Descriptors.FieldDescriptor.Type.GROUP) {
+                defaultValue = field.getDefaultValue();
+                if (defaultValue instanceof Descriptors.EnumValueDescriptor) {
+                    defaultValue = ((Descriptors.EnumValueDescriptor) defaultValue).getNumber();
+                }
+            }
+            this.defaultValue = defaultValue;
+            if (map) {
+                Descriptors.Descriptor entry = field.getMessageType();
+                this.mapKey = new FieldInfo(entry.findFieldByNumber(1), 0);
+                this.mapValue = new FieldInfo(entry.findFieldByNumber(2), 1);
+            } else {
+                this.mapKey = null;
+                this.mapValue = null;
+            }
+        }
+
+        void linkOneofSiblings(FieldInfo[] all) {
+            Descriptors.OneofDescriptor oneof = field.getContainingOneof();
+            if (oneof == null) return;
+            int[] slots = new int[all.length];
+            int count = 0;
+            for (FieldInfo other : all) {
+                if (other != this && other.field.getContainingOneof() == oneof) slots[count++] = other.slot;
+            }
+            oneofSiblingSlots = Arrays.copyOf(slots, count);
+        }
+
+        private static boolean isProto3(Descriptors.FileDescriptor file) {
+            return "proto3".equals(file.toProto().getSyntax());
+        }
+
+        JsonProtoCodec codec() {
+            JsonProtoCodec c = codec;
+            if (c == null) codec = c = forType(field.getMessageType());
+            return c;
+        }
+    }
+
+    /** Per-thread output buffers, one per nesting depth, reused so nested messages do not allocate. */
+    private static final class Scratch {
+        private static final int MAX_RETAINED_BYTES = 1 << 20;
+        private final List<Level> levels = new ArrayList<>();
+
+        Level at(int depth) {
+            while (levels.size() <= depth) levels.add(new Level());
+            Level level = levels.get(depth);
+            if (level.capacity() > MAX_RETAINED_BYTES) {
+                // Do not keep a huge buffer alive after one large message
+                level = new Level();
+                levels.set(depth, level);
+            }
+            level.reset();
+            return level;
+        }
+    }
+
+    private static final class Level extends ByteArrayOutputStream {
+        final CodedOutputStream out = CodedOutputStream.newInstance(this, 256);
+
+        Level() {
+            super(256);
+        }
+
+        int capacity() { return buf.length; }
+
+        int flushedSize() throws IOException {
+            out.flush();
+            return count;
+        }
+
+        /** Writes the buffered content into {@code parent} as a length-delimited field. */
+        void writeTo(CodedOutputStream parent, int fieldNumber) throws IOException {
+            out.flush();
+            parent.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            parent.writeUInt32NoTag(count);
+            parent.writeRawBytes(buf, 0, count);
+        }
+    }
+
+    /**
+     * Text output with the line handling of JsonFormat's pretty printer: the current indentation
+     * is written before the first text of each line. As an {@link Appendable} it takes output of
+     * {@code JsonFormat} itself, which then lines up with the enclosing message.
+     */
+    private static final class Out implements Appendable {
+        private static final String[] ESCAPES = new String[128];
+
+        static {
+            // The escapes of the HTML-safe Gson that JsonFormat prints strings with
+            for (int c = 0; c < 0x20; c++) ESCAPES[c] = String.format("\\u%04x", c);
+            ESCAPES['"'] = "\\\"";
+            ESCAPES['\\'] = "\\\\";
+            ESCAPES['\t'] = "\\t";
+            ESCAPES['\b'] = "\\b";
+            ESCAPES['\n'] = "\\n";
+            ESCAPES['\r'] = "\\r";
+            ESCAPES['\f'] = "\\f";
+            ESCAPES['<'] = "\\u003c";
+            ESCAPES['>'] = "\\u003e";
+            ESCAPES['&'] = "\\u0026";
+            ESCAPES['='] = "\\u003d";
+            ESCAPES['\''] = "\\u0027";
+        }
+
+        private final StringBuilder text;
+        private final StringBuilder indent = new StringBuilder();
+        private boolean atStartOfLine = true;
+
+        Out(int capacity) {
+            text = new StringBuilder(capacity);
+        }
+
+        Out indent() {
+            indent.append("  ");
+            return this;
+        }
+
+        Out outdent() {
+            indent.setLength(indent.length() - 2);
+            return this;
+        }
+
+        Out newline() {
+            text.append('\n');
+            atStartOfLine = true;
+            return this;
+        }
+
+        /** Appends text that holds no line break. */
+        Out text(String s) {
+            startLine();
+            text.append(s);
+            return this;
+        }
+
+        /** Appends {@code s} as a quoted, escaped JSON string. */
+        Out string(String s) {
+            startLine();
+            text.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                String escape = null;
+                if (c < 128) escape = ESCAPES[c];
+                else if (c == '\u2028') escape = "\\u2028";
+                else if (c == '\u2029') escape = "\\u2029";
+                if (escape != null) text.append(escape);
+                else text.append(c);
+            }
+            text.append('"');
+            return this;
+        }
+
+        private void startLine() {
+            if (atStartOfLine) {
+                atStartOfLine = false;
+                text.append(indent);
+            }
+        }
+
+        @Override
+        public Out append(CharSequence s) {
+            return append(s, 0, s.length());
+        }
+
+        @Override
+        public Out append(CharSequence s, int start, int end) {
+            int pos = start;
+            for (int i = start; i < end; i++) {
+                if (s.charAt(i) == '\n') {
+                    if (i > pos) startLine();
+                    text.append(s, pos, i);
+                    newline();
+                    pos = i + 1;
+                }
+            }
+            if (end > pos) {
+                startLine();
+                text.append(s, pos, end);
+            }
+            return this;
+        }
+
+        @Override
+        public Out append(char c) {
+            if (c == '\n') {
+                return newline();
+            }
+            startLine();
+            text.append(c);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.protobuf.Descriptors;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds a request JSON skeleton from a message descriptor: every field with a default
+ * value, nested messages expanded, one element for repeated fields and maps, and only
+ * the first member of each oneof so the result parses as-is.
+ */
+public class JsonTemplateGenerator {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+    private static final int MAX_DEPTH = 8;
+
+    private JsonTemplateGenerator() {}
+
+    public static String generate(Descriptors.Descriptor descriptor) {
+        return GSON.toJson(messageTemplate(descriptor, new HashSet<>(), 0));
+    }
+
+    private static JsonElement messageTemplate(Descriptors.Descriptor type, Set<String> path, int depth) {
+        JsonElement wellKnown = wellKnownTemplate(type.getFullName());
+        if (wellKnown != null) return wellKnown;
+
+        JsonObject obj = new JsonObject();
+        // Stop at recursive types and very deep nesting
+        if (depth >= MAX_DEPTH || !path.add(type.getFullName())) return obj;
+        for (Descriptors.FieldDescriptor field : type.getFields()) {
+            Descriptors.OneofDescriptor oneof = field.getRealContainingOneof();
+            if (oneof != null && oneof.getField(0) != field) continue;
+            obj.add(field.getName(), fieldTemplate(field, path, depth));
+        }
+        path.remove(type.getFullName());
+        return obj;
+    }
+
+    private static JsonElement fieldTemplate(Descriptors.FieldDescriptor field, Set<String> path, int depth) {
+        if (field.isMapField()) {
+            Descriptors.Descriptor entry = field.getMessageType();
+            JsonObject map = new JsonObject();
+            map.add(mapKeyTemplate(entry.findFieldByNumber(1)),
+                    valueTemplate(entry.findFieldByNumber(2), path, depth));
+            return map;
+        }
+        if (field.isRepeated()) {
+            JsonArray array = new JsonArray();
+            array.add(valueTemplate(field, path, depth));
+            return array;
+        }
+        return valueTemplate(field, path, depth);
+    }
+
+    private static JsonElement valueTemplate(Descriptors.FieldDescriptor field, Set<String> path, int depth) {
+        switch (field.getJavaType()) {
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return new JsonPrimitive(0);
+            case BOOLEAN:
+                return new JsonPrimitive(false);
+            case STRING:
+            case BYTE_STRING:
+                return new JsonPrimitive("");
+            case ENUM:
+                return new JsonPrimitive(field.getEnumType().getValues().get(0).getName());
+            case MESSAGE:
+                return messageTemplate(field.getMessageType(), path, depth + 1);
+            default:
+                return JsonNull.INSTANCE;
+        }
+    }
+
+    private static String mapKeyTemplate(Descriptors.FieldDescriptor keyField) {
+        switch (keyField.getJavaType()) {
+            case STRING: return "key";
+            case BOOLEAN: return "false";
+            default: return "0";
+        }
+    }
+
+    /** JSON forms of the well-known types, which do not map to plain objects. */
+    private static JsonElement wellKnownTemplate(String fullName) {
+        switch (fullName) {
+            case "google.protobuf.Timestamp": return new JsonPrimitive("1970-01-01T00:00:00Z");
+            case "google.protobuf.Duration": return new JsonPrimitive("0s");
+            case "google.protobuf.FieldMask": return new JsonPrimitive("");
+            case "google.protobuf.StringValue":
+            case "google.protobuf.BytesValue": return new JsonPrimitive("");
+            case "google.protobuf.BoolValue": return new JsonPrimitive(false);
+            case "google.protobuf.Int32Value":
+            case "google.protobuf.Int64Value":
+            case "google.protobuf.UInt32Value":
+            case "google.protobuf.UInt64Value":
+            case "google.protobuf.FloatValue":
+            case "google.protobuf.DoubleValue": return new JsonPrimitive(0);
+            case "google.protobuf.Value": return JsonNull.INSTANCE;
+            case "google.protobuf.ListValue": return new JsonArray();
+            case "google.protobuf.Struct":
+            case "google.protobuf.Empty": return new JsonObject();
+            case "google.protobuf.Any": {
+                JsonObject any = new JsonObject();
+                any.addProperty("@type", "");
+                return any;
+            }
+            default: return null;
+        }
+    }
+}
@@ -23,6 +23,7 @@ public class ProtoFileParser {
     private Map<String, Map<String, String>> serviceMethodToResponseType = new HashMap<>();
     private Map<String, Descriptors.ServiceDescriptor> serviceDescriptors = new HashMap<>();
     private String packageName = "";
+    private byte[] descriptorSetBytes;
 
     public void parseProtoFile(String protoFilePath) throws Exception {
         this.protoPath = Paths.get(protoFilePath);
@@ -35,11 +36,13 @@ public class ProtoFileParser {
         extractPackageName(cleaned);
         parseServices(cleaned);
 
+        Path descOut = null;
+        Path errOut = null;
         try {
             // Pakai absolute path untuk semuanya
             Path protoPathAbs = protoPath.toAbsolutePath();                  // e.g. D:/.../auth.proto
             Path protoDirAbs = protoPathAbs.getParent();                     // e.g. D:/.../protos
-            Path descOut = Files.createTempFile("desc", ".pb");              // temporary output file
+            descOut = Files.createTempFile("desc", ".pb");                   // temporary output file
 
             System.out.println("protoFilePath: " + protoPathAbs);
             System.out.println("protoDir: " + protoDirAbs);
@@ -55,31 +58,89 @@ public class ProtoFileParser {
             );
 
             pb.directory(protoDirAbs.toFile());                              // working dir = proto folder
+            // stderr goes to a file so waiting for protoc stays interruptible (GUI cancel)
+            errOut = Files.createTempFile("protoc", ".err");
+            pb.redirectError(errOut.toFile());
             Process proc = pb.start();
 
-            // Read stderr from protoc
-            ByteArrayOutputStream errStream = new ByteArrayOutputStream();
-            try (InputStream es = proc.getErrorStream()) {
-                byte[] buf = new byte[1024];
-                int len;
-                while ((len = es.read(buf)) != -1) {
-                    errStream.write(buf, 0, len);
-                }
+            int exit;
+            try {
+                exit = proc.waitFor();
+            } catch (InterruptedException ex) {
+                proc.destroyForcibly();
+                throw ex;
             }
-
-            int exit = proc.waitFor();
+            String errMsg = new String(Files.readAllBytes(errOut), StandardCharsets.UTF_8);
             if (exit != 0) {
-                String errMsg = new String(errStream.toByteArray(), StandardCharsets.UTF_8);
                 throw new IOException("protoc failed (exit " + exit + "): " + errMsg);
             }
 
             // Parse descriptor set
-            DescriptorProtos.FileDescriptorSet set;
-            try (InputStream is = Files.newInputStream(descOut)) {
-                set = DescriptorProtos.FileDescriptorSet.parseFrom(is);
+            byte[] setBytes = Files.readAllBytes(descOut);
+            DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(setBytes);
+            buildDescriptors(set, protoPathAbs.getFileName().toString(), false);
+            descriptorSetBytes = setBytes;
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        } catch (Exception ex) {
+            System.err.println("[ProtoFileParser] protoc descriptor generation failed: " + ex.getMessage());
+        } finally {
+            // Failed or cancelled compiles must not leave temp files behind
+            deleteQuietly(descOut);
+            deleteQuietly(errOut);
+        }
+
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            System.err.println("[ProtoFileParser] cannot delete " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Loads a compiled {@code FileDescriptorSet} (e.g. one embedded in a test plan) instead of
+     * compiling a .proto file, so protoc is not needed. {@code protoFileName} picks the file
+     * whose services are exposed; if it is null or not in the set, the last file is used,
+     * which is the one protoc was asked to compile.
+     */
+    public void parseDescriptorSet(byte[] setBytes, String protoFileName) throws IOException {
+        DescriptorProtos.FileDescriptorSet set = DescriptorProtos.FileDescriptorSet.parseFrom(setBytes);
+        if (set.getFileCount() == 0) throw new IOException("Descriptor set is empty");
+        buildDescriptors(set, protoFileName, true);
+        descriptorSetBytes = setBytes;
+        packageName = fileDescriptor.getPackage();
+
+        serviceToMethods.clear();
+        serviceMethodToRequestType.clear();
+        serviceMethodToResponseType.clear();
+        for (Descriptors.ServiceDescriptor svc : fileDescriptor.getServices()) {
+            List<String> methods = new ArrayList<>();
+            Map<String, String> req = new HashMap<>();
+            Map<String, String> res = new HashMap<>();
+            for (Descriptors.MethodDescriptor m : svc.getMethods()) {
+                methods.add(m.getName());
+                req.put(m.getName(), m.getInputType().getName());
+                res.put(m.getName(), m.getOutputType().getName());
+            }
+            if (!methods.isEmpty()) {
+                serviceToMethods.put(svc.getName(), methods);
+                serviceMethodToRequestType.put(svc.getName(), req);
+                serviceMethodToResponseType.put(svc.getName(), res);
             }
+        }
+    }
 
-            Map<String, Descriptors.FileDescriptor> nameToFd = new HashMap<>();
+    private void buildDescriptors(DescriptorProtos.FileDescriptorSet set, String fileName,
+                                  boolean fallbackToLast) throws IOException {
+        Map<String, Descriptors.FileDescriptor> nameToFd = new LinkedHashMap<>();
+        Descriptors.FileDescriptor last = null;
+        try {
             for (DescriptorProtos.FileDescriptorProto fdp : set.getFileList()) {
                 List<Descriptors.FileDescriptor> deps = new ArrayList<>();
                 for (String depName : fdp.getDependencyList()) {
@@ -91,31 +152,51 @@ public class ProtoFileParser {
                     deps.toArray(new Descriptors.FileDescriptor[0])
                 );
                 nameToFd.put(fdp.getName(), fd);
+                last = fd;
             }
+        } catch (Descriptors.DescriptorValidationException ex) {
+            throw new IOException("Invalid descriptor: " + ex.getMessage(), ex);
+        }
 
-            String fileName = protoPathAbs.getFileName().toString();
-            fileDescriptor = nameToFd.get(fileName);
-            if (fileDescriptor == null) {
-                for (Descriptors.FileDescriptor fd : nameToFd.values()) {
-                    if (fd.getName().endsWith(fileName)) {
-                        fileDescriptor = fd;
-                        break;
-                    }
+        fileDescriptor = fileName != null ? nameToFd.get(fileName) : null;
+        if (fileDescriptor == null && fileName != null) {
+            for (Descriptors.FileDescriptor fd : nameToFd.values()) {
+                if (fd.getName().endsWith(fileName)) {
+                    fileDescriptor = fd;
+                    break;
                 }
             }
+        }
+        if (fileDescriptor == null && fallbackToLast) {
+            fileDescriptor = last;
+        }
 
-            if (fileDescriptor == null) {
-                throw new IOException("Failed to locate descriptor for " + protoPathAbs);
-            }
+        if (fileDescriptor == null) {
+            throw new IOException("Failed to locate descriptor for " + fileName);
+        }
 
-            for (Descriptors.ServiceDescriptor svc : fileDescriptor.getServices()) {
-                serviceDescriptors.put(svc.getName(), svc);
-            }
+        serviceDescriptors.clear();
+        for (Descriptors.ServiceDescriptor svc : fileDescriptor.getServices()) {
+            serviceDescriptors.put(svc.getName(), svc);
+        }
+    }
 
-        } catch (Exception ex) {
-            System.err.println("[ProtoFileParser] protoc descriptor generation failed: " + ex.getMessage());
+    /**
+     * Finds a field by its proto name or, failing that, its JSON name, so field paths can be
+     * written either way (e.g. {@code user_id} or {@code userId}).
+     */
+    public static Descriptors.FieldDescriptor findField(Descriptors.Descriptor type, String name) {
+        Descriptors.FieldDescriptor field = type.findFieldByName(name);
+        if (field != null) return field;
+        for (Descriptors.FieldDescriptor candidate : type.getFields()) {
+            if (candidate.getJsonName().equals(name)) return candidate;
         }
+        return null;
+    }
 
+    /** Hex SHA-256 of a serialized descriptor set; identifies identical sets across samplers. */
+    public static String hashDescriptorSet(byte[] setBytes) {
+        return Hashes.sha256Hex(setBytes);
     }
 
     private void parseServices(String content) {
@@ -212,5 +293,7 @@ public class ProtoFileParser {
         return (map != null) ? map.get(m) : null;
     }
     public String getPackageName() { return packageName; }
+    /** The compiled {@code FileDescriptorSet} (with imports), or null if compilation failed. */
+    public byte[] getDescriptorSetBytes() { return descriptorSetBytes; }
     public String getDebugInfo() { return fileDescriptor != null ? fileDescriptor.toProto().toString() : ""; }
 }
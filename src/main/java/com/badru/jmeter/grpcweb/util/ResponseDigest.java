@@ -0,0 +1,176 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SHA-256 digest of a response's JSON form, computed while the JSON is printed so the full
+ * text is never held in memory; only a prefix of it is kept. Map keys are printed sorted so
+ * the digest does not depend on the order the server wrote map entries in.
+ *
+ * <p>Optional field checksums digest single fields, given as dotted paths of proto or JSON
+ * field names through singular message fields (e.g. {@code user.address}), so a changing field such as a timestamp does
+ * not prevent checking the rest.
+ */
+public class ResponseDigest {
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer()
+            .includingDefaultValueFields()
+            .sortingMapKeys();
+    private static final JsonFormat.Printer FIELD_PRINTER = JsonFormat.printer()
+            .sortingMapKeys()
+            .omittingInsignificantWhitespace();
+    private static final int FIELD_CHECKSUM_LENGTH = 16;
+
+    private final String digest;
+    private final String prefix;
+    private final long totalBytes;
+    private final boolean truncated;
+    private final Map<String, String> fieldChecksums;
+
+    private ResponseDigest(String digest, String prefix, long totalBytes, boolean truncated,
+                           Map<String, String> fieldChecksums) {
+        this.digest = digest;
+        this.prefix = prefix;
+        this.totalBytes = totalBytes;
+        this.truncated = truncated;
+        this.fieldChecksums = fieldChecksums;
+    }
+
+    /**
+     * Digests {@code message}, keeping at most {@code prefixChars} characters of its JSON.
+     *
+     * @throws IllegalArgumentException if a field path does not exist or crosses a repeated field
+     */
+    public static ResponseDigest compute(MessageOrBuilder message, int prefixChars, List<String> fieldPaths)
+            throws IOException {
+        DigestSink sink = new DigestSink(Math.max(0, prefixChars));
+        PRINTER.appendTo(message, sink);
+        String digest = sink.finish();
+
+        Map<String, String> checksums = new LinkedHashMap<>();
+        for (String path : fieldPaths) {
+            checksums.put(path, fieldChecksum(message, path));
+        }
+        return new ResponseDigest(digest, sink.prefix.toString(), sink.totalBytes, sink.truncated,
+                Collections.unmodifiableMap(checksums));
+    }
+
+    private static String fieldChecksum(MessageOrBuilder message, String path) throws IOException {
+        String[] names = path.split("\\.");
+        MessageOrBuilder current = message;
+        for (int i = 0; i < names.length; i++) {
+            Descriptors.FieldDescriptor field = ProtoFileParser.findField(current.getDescriptorForType(), names[i]);
+            if (field == null) {
+                throw new IllegalArgumentException("Checksum field not found: " + path);
+            }
+            if (i == names.length - 1) {
+                // Print a message holding only this field, which also covers repeated and map fields
+                Message single = DynamicMessage.newBuilder(current.getDescriptorForType())
+                        .setField(field, current.getField(field))
+                        .build();
+                DigestSink sink = new DigestSink(0);
+                FIELD_PRINTER.appendTo(single, sink);
+                return sink.finish().substring(0, FIELD_CHECKSUM_LENGTH);
+            }
+            if (field.isRepeated() || field.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                throw new IllegalArgumentException("Checksum field path " + path
+                        + " must go through singular message fields");
+            }
+            current = (MessageOrBuilder) current.getField(field);
+        }
+        throw new IllegalArgumentException("Empty checksum field path");
+    }
+
+    /** Hex SHA-256 of the UTF-8 JSON. */
+    public String getDigest() { return digest; }
+    /** The first characters of the JSON, as configured. */
+    public String getPrefix() { return prefix; }
+    /** Size of the complete UTF-8 JSON in bytes. */
+    public long getTotalBytes() { return totalBytes; }
+    public boolean isTruncated() { return truncated; }
+    /** Short checksum per configured field path, in configuration order. */
+    public Map<String, String> getFieldChecksums() { return fieldChecksums; }
+
+    /** Appendable that hashes the UTF-8 form of the text appended to it and keeps a capped prefix. */
+    private static final class DigestSink implements Appendable {
+        private final MessageDigest sha256;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final CharBuffer chars = CharBuffer.allocate(1024);
+        private final ByteBuffer bytes = ByteBuffer.allocate(4096);
+        private final StringBuilder prefix;
+        private final int prefixLimit;
+        private long totalBytes;
+        private boolean truncated;
+
+        DigestSink(int prefixLimit) {
+            this.prefixLimit = prefixLimit;
+            this.prefix = new StringBuilder(Math.min(prefixLimit, 8192));
+            this.sha256 = Hashes.newSha256();
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (prefix.length() < prefixLimit) {
+                prefix.append(c);
+            } else {
+                truncated = true;
+            }
+            if (!chars.hasRemaining()) drain(false);
+            chars.put(c);
+            return this;
+        }
+
+        private void drain(boolean endOfInput) {
+            chars.flip();
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                flushBytes();
+                if (result.isUnderflow()) break;
+            }
+            // A high surrogate waiting for its pair stays in the buffer
+            chars.compact();
+        }
+
+        private void flushBytes() {
+            bytes.flip();
+            totalBytes += bytes.remaining();
+            sha256.update(bytes);
+            bytes.clear();
+        }
+
+        String finish() {
+            drain(true);
+            encoder.flush(bytes);
+            flushBytes();
+            return Hashes.hex(sha256.digest());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * Reads files written by {@link ResponseRecorder}. Run it as a tool to print one JSON
+ * line per recorded response, decoded with the descriptors of the given proto file:
+ *
+ * <pre>
+ * java -cp jmeter-grpc-web-plugin.jar com.badru.jmeter.grpcweb.util.ResponseRecordReader responses.bin service.proto
+ * </pre>
+ */
+public class ResponseRecordReader {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: ResponseRecordReader <recording file> <proto file>");
+            System.exit(2);
+        }
+        ProtoFileParser parser = new ProtoFileParser();
+        parser.parseProtoFile(args[1]);
+        JsonFormat.Printer printer = JsonFormat.printer().omittingInsignificantWhitespace();
+        forEach(Paths.get(args[0]), record -> {
+            JsonObject line = new JsonObject();
+            line.addProperty("timestamp", record.getTimestampMillis());
+            line.addProperty("method", record.getMethod());
+            line.addProperty("httpStatus", record.getHttpStatus());
+            line.addProperty("grpcStatus", record.getGrpcStatus());
+            line.addProperty("latencyMs", record.getLatencyMillis());
+            line.addProperty("elapsedMs", record.getElapsedMillis());
+            try {
+                DynamicMessage message = record.decode(parser);
+                if (message != null) {
+                    line.add("response", JsonParser.parseString(printer.print(message)));
+                }
+            } catch (Exception ex) {
+                line.addProperty("error", ex.toString());
+            }
+            System.out.println(line);
+        });
+    }
+
+    /** Streams every record of a recording to {@code handler}. */
+    public static void forEach(Path file, Consumer<Record> handler) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            CodedInputStream coded = CodedInputStream.newInstance(in);
+            coded.setSizeLimit(Integer.MAX_VALUE);
+            while (!coded.isAtEnd()) {
+                int length = coded.readRawVarint32();
+                int limit = coded.pushLimit(length);
+                handler.accept(readRecord(coded));
+                coded.popLimit(limit);
+                coded.resetSizeCounter();
+            }
+        }
+    }
+
+    private static Record readRecord(CodedInputStream in) throws IOException {
+        Record record = new Record();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (tag >>> 3) {
+                case 1: record.timestampMillis = in.readInt64(); break;
+                case 2: record.method = in.readString(); break;
+                case 3: record.httpStatus = in.readInt32(); break;
+                case 4: record.grpcStatus = in.readInt32(); break;
+                case 5: record.latencyMillis = in.readInt64(); break;
+                case 6: record.elapsedMillis = in.readInt64(); break;
+                case 7: record.frames = in.readByteArray(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return record;
+    }
+
+    public static class Record {
+        private long timestampMillis;
+        private String method = "";
+        private int httpStatus;
+        private int grpcStatus;
+        private long latencyMillis;
+        private long elapsedMillis;
+        private byte[] frames = new byte[0];
+
+        public long getTimestampMillis() { return timestampMillis; }
+        public String getMethod() { return method; }
+        public int getHttpStatus() { return httpStatus; }
+        public int getGrpcStatus() { return grpcStatus; }
+        public long getLatencyMillis() { return latencyMillis; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public byte[] getFrames() { return frames; }
+
+        /**
+         * Decodes the first data frame as the method's response message, or returns
+         * {@code null} if the response carried no message (e.g. an error status).
+         */
+        public DynamicMessage decode(ProtoFileParser parser) throws IOException {
+            int slash = method.lastIndexOf('/');
+            String service = method.substring(method.lastIndexOf('.', slash) + 1, slash);
+            String methodName = method.substring(slash + 1);
+            int pos = 0;
+            while (pos + 5 <= frames.length) {
+                int flag = frames[pos] & 0xFF;
+                int len = ((frames[pos + 1] & 0xFF) << 24) | ((frames[pos + 2] & 0xFF) << 16)
+                        | ((frames[pos + 3] & 0xFF) << 8) | (frames[pos + 4] & 0xFF);
+                int available = Math.min(len, frames.length - pos - 5);
+                if ((flag & 0x80) == 0) {
+                    DynamicMessage.Builder builder = parser.getOutputMessageBuilder(service, methodName);
+                    builder.mergeFrom(frames, pos + 5, available);
+                    return builder.build();
+                }
+                pos += 5 + available;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.CodedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends raw gRPC-Web responses to a file without blocking sampler threads. Records go
+ * into a bounded array-backed queue and a single writer thread per file serializes them;
+ * when the queue is full the record is dropped and counted instead of stalling the test.
+ *
+ * <p>The file is a sequence of length-delimited messages (as written by
+ * {@code writeDelimitedTo}) of this schema:
+ * <pre>
+ * message ResponseRecord {
+ *   int64  timestamp_ms = 1;  // sample start, epoch millis
+ *   string method       = 2;  // "package.Service/Method"
+ *   int32  http_status  = 3;
+ *   int32  grpc_status  = 4;
+ *   int64  latency_ms   = 5;
+ *   int64  elapsed_ms   = 6;
+ *   bytes  frames       = 7;  // raw gRPC-Web response body, including trailer frames
+ * }
+ * </pre>
+ * {@link ResponseRecordReader} decodes such files using the proto's descriptors.
+ */
+public class ResponseRecorder {
+    private static final Logger log = LoggerFactory.getLogger(ResponseRecorder.class);
+    private static final Map<String, ResponseRecorder> RECORDERS = new ConcurrentHashMap<>();
+    private static final Record STOP = new Record(0, "", 0, 0, 0, 0, new byte[0]);
+
+    private final Path path;
+    private final BlockingQueue<Record> queue;
+    private final Thread writer;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean failed;
+
+    private ResponseRecorder(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, capacity));
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+        this.writer = new Thread(() -> writeLoop(out), "grpcweb-recorder-" + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Returns the recorder shared by every sampler writing to {@code file}, opening it on first use. */
+    public static ResponseRecorder forFile(String file, int capacity) {
+        return RECORDERS.computeIfAbsent(file, f -> {
+            try {
+                return new ResponseRecorder(Paths.get(f), capacity);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot open response recording " + f, ex);
+            }
+        });
+    }
+
+    /** Flushes and closes every open recording, waiting for queued records to be written. */
+    public static void closeAll() {
+        for (ResponseRecorder recorder : RECORDERS.values()) {
+            recorder.close();
+        }
+        RECORDERS.clear();
+    }
+
+    /**
+     * Queues a response for writing; never blocks. Returns {@code false} if the record was
+     * dropped because the buffer is full or the file could not be written.
+     */
+    public boolean record(long timestampMillis, String method, int httpStatus, int grpcStatus,
+                          long latencyMillis, long elapsedMillis, byte[] frames) {
+        if (failed) {
+            dropped.increment();
+            return false;
+        }
+        boolean queued = queue.offer(new Record(timestampMillis, method, httpStatus, grpcStatus,
+                latencyMillis, elapsedMillis, frames != null ? frames : new byte[0]));
+        if (!queued) dropped.increment();
+        return queued;
+    }
+
+    private void close() {
+        try {
+            // Never block on a full queue: the writer may have died and stopped draining it
+            while (writer.isAlive() && !queue.offer(STOP, 1, TimeUnit.SECONDS)) {
+                // writer still busy; try again
+            }
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        discardQueued();
+        log.info("[Recorder] {}: {} responses written, {} dropped because the buffer was full",
+                path, written.sum(), dropped.sum());
+    }
+
+    private void writeLoop(OutputStream out) {
+        CodedOutputStream coded = CodedOutputStream.newInstance(out, 1 << 12);
+        try {
+            while (true) {
+                Record record = queue.poll();
+                if (record == null) {
+                    // Idle: push buffered bytes to disk, then wait for more
+                    coded.flush();
+                    out.flush();
+                    record = queue.take();
+                }
+                if (record == STOP) break;
+                record.writeDelimitedTo(coded);
+                written.increment();
+            }
+            coded.flush();
+        } catch (IOException ex) {
+            failed = true;
+            log.error("[Recorder] writing {} failed, recording stopped", path, ex);
+            discardQueued();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                log.warn("[Recorder] closing {} failed", path, ex);
+            }
+        }
+    }
+
+    /** Counts records that will never be written as dropped and frees their memory. */
+    private void discardQueued() {
+        Record record;
+        while ((record = queue.poll()) != null) {
+            if (record != STOP) dropped.increment();
+        }
+    }
+
+    private static class Record {
+        final long timestampMillis;
+        final String method;
+        final int httpStatus;
+        final int grpcStatus;
+        final long latencyMillis;
+        final long elapsedMillis;
+        final byte[] frames;
+
+        Record(long timestampMillis, String method, int httpStatus, int grpcStatus,
+               long latencyMillis, long elapsedMillis, byte[] frames) {
+            this.timestampMillis = timestampMillis;
+            this.method = method;
+            this.httpStatus = httpStatus;
+            this.grpcStatus = grpcStatus;
+            this.latencyMillis = latencyMillis;
+            this.elapsedMillis = elapsedMillis;
+            this.frames = frames;
+        }
+
+        void writeDelimitedTo(CodedOutputStream out) throws IOException {
+            int size = CodedOutputStream.computeInt64Size(1, timestampMillis)
+                    + CodedOutputStream.computeStringSize(2, method)
+                    + CodedOutputStream.computeInt32Size(3, httpStatus)
+                    + CodedOutputStream.computeInt32Size(4, grpcStatus)
+                    + CodedOutputStream.computeInt64Size(5, latencyMillis)
+                    + CodedOutputStream.computeInt64Size(6, elapsedMillis)
+                    + CodedOutputStream.computeByteArraySize(7, frames);
+            out.writeUInt32NoTag(size);
+            out.writeInt64(1, timestampMillis);
+            out.writeString(2, method);
+            out.writeInt32(3, httpStatus);
+            out.writeInt32(4, grpcStatus);
+            out.writeInt64(5, latencyMillis);
+            out.writeInt64(6, elapsedMillis);
+            out.writeByteArray(7, frames);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A captured workload: gRPC-Web requests, already framed, with their offsets from the
+ * first request. Written by {@link HarImporter} and replayed by the sampler. The file is a
+ * sequence of length-delimited messages of this schema:
+ * <pre>
+ * message WorkloadEntry {
+ *   int64  offset_ms = 1;  // time since the first request of the capture
+ *   string method    = 2;  // "package.Service/Method"
+ *   bytes  frames    = 3;  // gRPC-Web request body, binary framing
+ *   string json      = 4;  // the request message as JSON, for display
+ * }
+ * </pre>
+ */
+public class WorkloadFile {
+
+    private WorkloadFile() {}
+
+    public static void write(Path file, List<Entry> entries) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            CodedOutputStream coded = CodedOutputStream.newInstance(out);
+            for (Entry entry : entries) {
+                int size = CodedOutputStream.computeInt64Size(1, entry.offsetMillis)
+                        + CodedOutputStream.computeStringSize(2, entry.method)
+                        + CodedOutputStream.computeByteArraySize(3, entry.frames)
+                        + CodedOutputStream.computeStringSize(4, entry.json);
+                coded.writeUInt32NoTag(size);
+                coded.writeInt64(1, entry.offsetMillis);
+                coded.writeString(2, entry.method);
+                coded.writeByteArray(3, entry.frames);
+                coded.writeString(4, entry.json);
+            }
+            coded.flush();
+        }
+    }
+
+    /** Reads a whole workload, ordered by offset. */
+    public static List<Entry> read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            CodedInputStream coded = CodedInputStream.newInstance(in);
+            coded.setSizeLimit(Integer.MAX_VALUE);
+            while (!coded.isAtEnd()) {
+                int limit = coded.pushLimit(coded.readRawVarint32());
+                long offset = 0L;
+                String method = "";
+                byte[] frames = new byte[0];
+                String json = "";
+                int tag;
+                while ((tag = coded.readTag()) != 0) {
+                    switch (tag >>> 3) {
+                        case 1: offset = coded.readInt64(); break;
+                        case 2: method = coded.readString(); break;
+                        case 3: frames = coded.readByteArray(); break;
+                        case 4: json = coded.readString(); break;
+                        default: coded.skipField(tag);
+                    }
+                }
+                coded.popLimit(limit);
+                coded.resetSizeCounter();
+                entries.add(new Entry(offset, method, frames, json));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(a.offsetMillis, b.offsetMillis));
+        return Collections.unmodifiableList(entries);
+    }
+
+    public static class Entry {
+        private final long offsetMillis;
+        private final String method;
+        private final byte[] frames;
+        private final String json;
+
+        public Entry(long offsetMillis, String method, byte[] frames, String json) {
+            this.offsetMillis = offsetMillis;
+            this.method = method;
+            this.frames = frames;
+            this.json = json;
+        }
+
+        public long getOffsetMillis() { return offsetMillis; }
+        /** "package.Service/Method". */
+        public String getMethod() { return method; }
+        public byte[] getFrames() { return frames; }
+        public String getJson() { return json; }
+
+        public String getPackageName() {
+            String fullService = fullService();
+            int dot = fullService.lastIndexOf('.');
+            return dot < 0 ? "" : fullService.substring(0, dot);
+        }
+
+        public String getServiceName() {
+            String fullService = fullService();
+            return fullService.substring(fullService.lastIndexOf('.') + 1);
+        }
+
+        public String getMethodName() {
+            return method.substring(method.lastIndexOf('/') + 1);
+        }
+
+        private String fullService() {
+            int slash = method.lastIndexOf('/');
+            return slash < 0 ? "" : method.substring(0, slash);
+        }
+    }
+}
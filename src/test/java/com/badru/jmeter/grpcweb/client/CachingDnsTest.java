@@ -0,0 +1,54 @@
+package com.badru.jmeter.grpcweb.client;
+
+import okhttp3.Dns;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that lookups are answered from the cache within the TTL and resolved again after it.
+ */
+public class CachingDnsTest {
+
+    @Test
+    public void answersFromCacheWithinTtl() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CachingDns dns = new CachingDns(60L, counting(lookups));
+
+        List<InetAddress> first = dns.lookup("svc");
+        assertSame(first, dns.lookup("svc"));
+        assertEquals(1, lookups.get());
+
+        dns.lookup("other");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void resolvesAgainWithoutTtl() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CachingDns dns = new CachingDns(0L, counting(lookups));
+
+        dns.lookup("svc");
+        dns.lookup("svc");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void sharesOneResolverPerTtl() {
+        assertSame(CachingDns.forTtl(30L), CachingDns.forTtl(30L));
+        assertSame(CachingDns.forTtl(0L), CachingDns.forTtl(-5L));
+    }
+
+    private static Dns counting(AtomicInteger lookups) {
+        return hostname -> {
+            lookups.incrementAndGet();
+            return Collections.singletonList(InetAddress.getByAddress(hostname, new byte[] {10, 0, 0, 1}));
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.badru.jmeter.grpcweb.client;
+
+import okhttp3.Dns;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the balancing policies, lease bookkeeping and how resolved backends come and go
+ * with DNS answers.
+ */
+public class EndpointGroupTest {
+    /** Groups re-resolve at most once a second. */
+    private static final long REFRESH_WAIT_MILLIS = 1100L;
+
+    @After
+    public void tearDown() {
+        EndpointGroup.logSummariesAndReset();
+    }
+
+    @Test
+    public void roundRobinCyclesThroughBackends() {
+        EndpointGroup group = group(EndpointGroup.Policy.ROUND_ROBIN, "http://a:1", "http://b:1", "http://c:1");
+        List<String> picked = new ArrayList<>();
+        for (int i = 0; i < 6; i++) picked.add(group.select().getLabel());
+        assertEquals(Arrays.asList("http://a:1", "http://b:1", "http://c:1", "http://a:1", "http://b:1", "http://c:1"),
+                picked);
+    }
+
+    @Test
+    public void leastInFlightPicksTheIdleBackend() {
+        EndpointGroup group = group(EndpointGroup.Policy.LEAST_IN_FLIGHT, "http://a:1", "http://b:1", "http://c:1");
+        List<EndpointGroup.Endpoint> endpoints = group.getEndpoints();
+        endpoints.get(0).acquire();
+        endpoints.get(2).acquire();
+        for (int i = 0; i < 5; i++) assertSame(endpoints.get(1), group.select());
+    }
+
+    @Test
+    public void powerOfTwoPrefersTheLessBusyOfItsPair() {
+        EndpointGroup group = group(EndpointGroup.Policy.POWER_OF_TWO, "http://a:1", "http://b:1");
+        EndpointGroup.Endpoint busy = group.getEndpoints().get(0);
+        busy.acquire();
+        // With two backends both are always sampled, so the idle one always wins
+        for (int i = 0; i < 20; i++) assertSame(group.getEndpoints().get(1), group.select());
+    }
+
+    @Test
+    public void leasesReleaseOnlyOnce() {
+        EndpointGroup.Endpoint endpoint = group(EndpointGroup.Policy.ROUND_ROBIN, "http://a:1").select();
+        EndpointGroup.Lease lease = endpoint.acquire();
+        EndpointGroup.Lease other = endpoint.acquire();
+        assertEquals(2, endpoint.getInFlight());
+
+        lease.release(1000L, true);
+        lease.release(1000L, false);
+        lease.cancel();
+        assertEquals(1, endpoint.getInFlight());
+
+        other.cancel();
+        other.release(1000L, true);
+        assertEquals(0, endpoint.getInFlight());
+    }
+
+    @Test
+    public void sharesGroupsPerSpec() {
+        EndpointGroup group = EndpointGroup.forSpec("http://a:1/, http://b:1", EndpointGroup.Policy.ROUND_ROBIN, false, 0L);
+        assertSame(group, EndpointGroup.forSpec("http://a:1/, http://b:1", EndpointGroup.Policy.ROUND_ROBIN, false, 0L));
+        assertEquals("http://a:1", group.getEndpoints().get(0).getBaseUrl());
+        assertNull(group.getEndpoints().get(0).getPinnedDns());
+        try {
+            EndpointGroup.forSpec(" , ", EndpointGroup.Policy.ROUND_ROBIN, false, 0L);
+            fail("blank server URL accepted");
+        } catch (IllegalArgumentException expected) {
+            // reported to the user as a sampler error
+        }
+    }
+
+    @Test
+    public void parsesPolicies() {
+        assertEquals(EndpointGroup.Policy.ROUND_ROBIN, EndpointGroup.parsePolicy(""));
+        assertEquals(EndpointGroup.Policy.POWER_OF_TWO, EndpointGroup.parsePolicy("power_of_two"));
+    }
+
+    @Test
+    public void resolveAllPinsOneEndpointPerAddress() throws Exception {
+        ScriptedDns dns = new ScriptedDns(address(1), address(2));
+        EndpointGroup group = resolvingGroup(dns);
+
+        assertEquals(2, group.getEndpoints().size());
+        EndpointGroup.Endpoint first = group.getEndpoints().get(0);
+        assertEquals("svc@10.0.0.1:8080", first.getLabel());
+        assertEquals("http://svc:8080", first.getBaseUrl());
+        assertEquals(Collections.singletonList(address(1)), first.getPinnedDns().lookup("svc"));
+    }
+
+    @Test
+    public void prunesBackendsDroppedFromDnsOnceIdle() throws Exception {
+        ScriptedDns dns = new ScriptedDns(address(1), address(2));
+        EndpointGroup group = resolvingGroup(dns);
+        EndpointGroup.Endpoint one = group.getEndpoints().get(0);
+        EndpointGroup.Endpoint two = group.getEndpoints().get(1);
+        EndpointGroup.Lease busy = one.acquire();
+
+        // .1 leaves DNS while a call on it is in flight: it keeps its counters
+        dns.answer(address(2));
+        Thread.sleep(REFRESH_WAIT_MILLIS);
+        group.select();
+        assertEquals(Collections.singletonList(two), group.getEndpoints());
+        dns.answer(address(1), address(2));
+        Thread.sleep(REFRESH_WAIT_MILLIS);
+        group.select();
+        assertSame(one, group.getEndpoints().get(0));
+
+        // Once idle and gone from DNS, it is forgotten and comes back as a new backend
+        busy.release(1000L, true);
+        dns.answer(address(2));
+        Thread.sleep(REFRESH_WAIT_MILLIS);
+        group.select();
+        dns.answer(address(1), address(2));
+        Thread.sleep(REFRESH_WAIT_MILLIS);
+        group.select();
+        assertNotSame(one, group.getEndpoints().get(0));
+        assertEquals(one.getLabel(), group.getEndpoints().get(0).getLabel());
+        assertSame(two, group.getEndpoints().get(1));
+    }
+
+    @Test
+    public void keepsLastBackendsThroughDnsOutage() throws Exception {
+        ScriptedDns dns = new ScriptedDns(address(1), address(2));
+        EndpointGroup group = resolvingGroup(dns);
+        List<EndpointGroup.Endpoint> before = group.getEndpoints();
+
+        dns.answer();
+        Thread.sleep(REFRESH_WAIT_MILLIS);
+        group.select();
+        assertEquals(before, group.getEndpoints());
+    }
+
+    private static EndpointGroup group(EndpointGroup.Policy policy, String... urls) {
+        return new EndpointGroup(Arrays.asList(urls), policy, false, new CachingDns(0L, Dns.SYSTEM));
+    }
+
+    private static EndpointGroup resolvingGroup(ScriptedDns dns) {
+        return new EndpointGroup(Collections.singletonList("http://svc:8080"), EndpointGroup.Policy.ROUND_ROBIN, true,
+                new CachingDns(0L, dns));
+    }
+
+    private static InetAddress address(int last) throws UnknownHostException {
+        return InetAddress.getByAddress("svc", new byte[] {10, 0, 0, (byte) last});
+    }
+
+    /** Answers every lookup with the addresses set last; none means the name does not resolve. */
+    private static class ScriptedDns implements Dns {
+        private volatile List<InetAddress> addresses;
+
+        ScriptedDns(InetAddress... addresses) {
+            answer(addresses);
+        }
+
+        void answer(InetAddress... addresses) {
+            this.addresses = Arrays.asList(addresses);
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            if (addresses.isEmpty()) throw new UnknownHostException(hostname);
+            return addresses;
+        }
+    }
+}
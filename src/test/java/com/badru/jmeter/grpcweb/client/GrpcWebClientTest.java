@@ -0,0 +1,226 @@
+package com.badru.jmeter.grpcweb.client;
+
+import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebRequest;
+import com.badru.jmeter.grpcweb.client.GrpcWebClient.GrpcWebResponse;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the client's retry and hedging against a local server that answers with scripted
+ * gRPC-Web responses.
+ */
+public class GrpcWebClientTest {
+    private static final byte[] REPLY = {0x08, 0x2a};
+
+    private MockWebServer server;
+    private GrpcWebClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new GrpcWebClient("http://" + server.getHostName() + ":" + server.getPort(), 10);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.shutdown();
+        ServiceConfig.clearCache();
+    }
+
+    @Test
+    public void sendsOneAttemptWithoutServiceConfig() throws Exception {
+        server.enqueue(grpcResponse(0));
+
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertTrue(resp.isSuccessful());
+        assertArrayEquals(REPLY, resp.getMessageBytes());
+        assertEquals(1, server.getRequestCount());
+        assertEquals("/example.UserService/GetUser", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void treatsMissingStatusOnHttp200AsOkUnlessRequired() throws Exception {
+        server.enqueue(grpcResponse(-1));
+        assertEquals(0, client.executeRequest(request()).getGrpcStatus());
+
+        client.setRequireGrpcStatus(true);
+        server.enqueue(grpcResponse(-1));
+        GrpcWebResponse resp = client.executeRequest(request());
+        assertEquals(2, resp.getGrpcStatus()); // UNKNOWN
+        assertFalse(resp.isSuccessful());
+    }
+
+    @Test
+    public void mapsHttpErrorsWithoutStatus() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        assertEquals(14, client.executeRequest(request()).getGrpcStatus()); // UNAVAILABLE
+    }
+
+    @Test
+    public void retriesRetryableStatusUntilSuccess() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(3, "")));
+        server.enqueue(grpcResponse(14));
+        server.enqueue(grpcResponse(0));
+
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertTrue(resp.isSuccessful());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, resp.getAttempts().size());
+        assertEquals(14, resp.getAttempts().get(0).getGrpcStatus());
+        assertEquals(0, resp.getAttempts().get(1).getGrpcStatus());
+    }
+
+    @Test
+    public void stopsAtMaxAttempts() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(2, "")));
+        for (int i = 0; i < 3; i++) server.enqueue(grpcResponse(14));
+
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertEquals(14, resp.getGrpcStatus());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryOtherStatuses() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(3, "")));
+        server.enqueue(grpcResponse(3));
+        server.enqueue(grpcResponse(0));
+
+        assertEquals(3, client.executeRequest(request()).getGrpcStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void negativePushbackStopsRetries() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(3, "")));
+        server.enqueue(grpcResponse(14).addHeader("grpc-retry-pushback-ms", "-1"));
+        server.enqueue(grpcResponse(0));
+
+        assertEquals(14, client.executeRequest(request()).getGrpcStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void pushbackReplacesBackoff() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(3, "")));
+        server.enqueue(grpcResponse(14).addHeader("grpc-retry-pushback-ms", "300"));
+        server.enqueue(grpcResponse(0));
+
+        long start = System.nanoTime();
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertTrue(resp.isSuccessful());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+    }
+
+    @Test
+    public void throttleStopsRetriesWhenBudgetIsSpent() throws Exception {
+        // Two tokens: the first failure leaves one, which is not above half
+        client.setServiceConfig(ServiceConfig.parse(retryConfig(3,
+                ", \"retryThrottling\": {\"maxTokens\": 2, \"tokenRatio\": 0.1}")));
+        server.enqueue(grpcResponse(14));
+        server.enqueue(grpcResponse(0));
+
+        assertEquals(14, client.executeRequest(request()).getGrpcStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void hedgeWinsOverSlowAttemptAndCancelsIt() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(hedgingConfig(2, "0.05s")));
+        server.enqueue(grpcResponse(0).setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(grpcResponse(0));
+
+        long start = System.nanoTime();
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertTrue(resp.isSuccessful());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4000);
+        assertEquals(2, resp.getAttempts().size());
+        GrpcWebClient.Attempt first = resp.getAttempts().get(0);
+        GrpcWebClient.Attempt hedge = resp.getAttempts().get(1);
+        assertEquals(1, first.getGrpcStatus()); // CANCELLED
+        assertFalse(first.isHedged());
+        assertTrue(hedge.isHedged());
+        assertTrue(hedge.isSuccessful());
+    }
+
+    @Test
+    public void nonFatalFailureLaunchesHedgeAtOnce() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(hedgingConfig(3, "10s")));
+        server.enqueue(grpcResponse(14));
+        server.enqueue(grpcResponse(0));
+
+        long start = System.nanoTime();
+        GrpcWebResponse resp = client.executeRequest(request());
+
+        assertTrue(resp.isSuccessful());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void fatalStatusEndsHedging() throws Exception {
+        client.setServiceConfig(ServiceConfig.parse(hedgingConfig(3, "10s")));
+        server.enqueue(grpcResponse(3));
+        server.enqueue(grpcResponse(0));
+
+        assertEquals(3, client.executeRequest(request()).getGrpcStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private static GrpcWebRequest request() {
+        GrpcWebRequest req = new GrpcWebRequest();
+        req.setPackageName("example");
+        req.setServiceName("UserService");
+        req.setMethodName("GetUser");
+        req.setMessageBytes(new byte[] {0x08, 0x01});
+        req.setHeaders(Collections.<String, String>emptyMap());
+        return req;
+    }
+
+    /** A gRPC-Web response with one data frame and, unless {@code status} is negative, a trailer frame. */
+    private static MockResponse grpcResponse(int status) {
+        Buffer body = new Buffer();
+        body.writeByte(0x00).writeInt(REPLY.length).write(REPLY);
+        if (status >= 0) {
+            byte[] trailers = ("grpc-status:" + status + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            body.writeByte(0x80).writeInt(trailers.length).write(trailers);
+        }
+        return new MockResponse()
+                .setHeader("Content-Type", "application/grpc-web+proto")
+                .setBody(body);
+    }
+
+    private static String retryConfig(int maxAttempts, String extra) {
+        return "{\"methodConfig\": [{\"name\": [{\"service\": \"example.UserService\"}],"
+                + "\"retryPolicy\": {\"maxAttempts\": " + maxAttempts + ", \"initialBackoff\": \"0.01s\","
+                + "  \"maxBackoff\": \"0.05s\", \"backoffMultiplier\": 2,"
+                + "  \"retryableStatusCodes\": [\"UNAVAILABLE\"]}}]" + extra + "}";
+    }
+
+    private static String hedgingConfig(int maxAttempts, String delay) {
+        return "{\"methodConfig\": [{\"name\": [{\"service\": \"example.UserService\"}],"
+                + "\"hedgingPolicy\": {\"maxAttempts\": " + maxAttempts + ", \"hedgingDelay\": \"" + delay + "\","
+                + "  \"nonFatalStatusCodes\": [\"UNAVAILABLE\"]}}]}";
+    }
+}
@@ -0,0 +1,156 @@
+package com.badru.jmeter.grpcweb.client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks service config parsing, the attempt limits and the retry throttle against the
+ * gRPC service config spec.
+ */
+public class ServiceConfigTest {
+
+    @After
+    public void tearDown() {
+        ServiceConfig.clearCache();
+    }
+
+    @Test
+    public void parsesRetryPolicy() {
+        ServiceConfig config = ServiceConfig.parse(retryConfig(4));
+        ServiceConfig.RetryPolicy retry = config.findMethodConfig("example.UserService", "GetUser").getRetryPolicy();
+
+        assertEquals(4, retry.getMaxAttempts());
+        assertTrue(retry.isRetryable(14));  // UNAVAILABLE, by name
+        assertTrue(retry.isRetryable(8));   // RESOURCE_EXHAUSTED, by number
+        assertFalse(retry.isRetryable(3));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), retry.getBackoffCeilingNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), retry.getBackoffCeilingNanos(2));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), retry.getBackoffCeilingNanos(3)); // maxBackoff
+        assertNull(config.findMethodConfig("example.UserService", "GetUser").getHedgingPolicy());
+    }
+
+    @Test
+    public void parsesHedgingPolicyWithDefaults() {
+        ServiceConfig config = ServiceConfig.parse("{\"methodConfig\": [{"
+                + "\"name\": [{\"service\": \"example.UserService\"}],"
+                + "\"hedgingPolicy\": {\"maxAttempts\": 3}}]}");
+        ServiceConfig.HedgingPolicy hedging =
+                config.findMethodConfig("example.UserService", "ListUsers").getHedgingPolicy();
+
+        assertEquals(3, hedging.getMaxAttempts());
+        assertEquals(0L, hedging.getHedgingDelayNanos());
+        assertFalse(hedging.isNonFatal(14));
+        assertNull(config.getRetryThrottle());
+    }
+
+    @Test
+    public void capsMaxAttemptsAtFive() {
+        assertEquals(5, ServiceConfig.parse(retryConfig(10)).findMethodConfig("example.UserService", "GetUser")
+                .getRetryPolicy().getMaxAttempts());
+        assertEquals(5, ServiceConfig.parse("{\"methodConfig\": [{\"name\": [{}],"
+                + "\"hedgingPolicy\": {\"maxAttempts\": 7}}]}").findMethodConfig("any.Service", "Call")
+                .getHedgingPolicy().getMaxAttempts());
+    }
+
+    @Test
+    public void rejectsFewerThanTwoAttempts() {
+        try {
+            ServiceConfig.parse(retryConfig(1));
+            fail("maxAttempts 1 accepted");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("maxAttempts"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRetryAndHedgingTogether() {
+        ServiceConfig.parse("{\"methodConfig\": [{\"name\": [{}],"
+                + "\"retryPolicy\": {\"maxAttempts\": 2, \"initialBackoff\": \"1s\", \"maxBackoff\": \"1s\","
+                + "  \"backoffMultiplier\": 1, \"retryableStatusCodes\": [\"UNAVAILABLE\"]},"
+                + "\"hedgingPolicy\": {\"maxAttempts\": 2}}]}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidJson() {
+        ServiceConfig.parse("{\"methodConfig\": [");
+    }
+
+    @Test
+    public void findsMethodConfigByPrecedence() {
+        ServiceConfig config = ServiceConfig.parse("{\"methodConfig\": ["
+                + "{\"name\": [{}], \"hedgingPolicy\": {\"maxAttempts\": 2}},"
+                + "{\"name\": [{\"service\": \"a.S\"}], \"hedgingPolicy\": {\"maxAttempts\": 3}},"
+                + "{\"name\": [{\"service\": \"a.S\", \"method\": \"M\"}], \"hedgingPolicy\": {\"maxAttempts\": 4}}]}");
+
+        assertEquals(4, config.findMethodConfig("a.S", "M").getHedgingPolicy().getMaxAttempts());
+        assertEquals(3, config.findMethodConfig("a.S", "Other").getHedgingPolicy().getMaxAttempts());
+        assertEquals(2, config.findMethodConfig("b.S", "M").getHedgingPolicy().getMaxAttempts());
+    }
+
+    @Test
+    public void parsesDurations() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), ServiceConfig.parseDurationNanos("0.25s"));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), ServiceConfig.parseDurationNanos(" 2s "));
+        assertEquals(1L, ServiceConfig.parseDurationNanos("0.000000001s"));
+        try {
+            ServiceConfig.parseDurationNanos("100ms");
+            fail("duration without seconds suffix accepted");
+        } catch (IllegalArgumentException expected) {
+            // only seconds are allowed by the protobuf JSON mapping
+        }
+    }
+
+    @Test
+    public void throttleAllowsRetriesAboveHalfTheTokens() {
+        ServiceConfig.RetryThrottle throttle = new ServiceConfig.RetryThrottle(10, 0.1);
+        assertTrue(throttle.isRetryAllowed());
+
+        for (int i = 0; i < 4; i++) throttle.onFailure();
+        assertTrue(throttle.isRetryAllowed());   // 6 tokens
+        throttle.onFailure();
+        assertFalse(throttle.isRetryAllowed());  // 5 tokens, not above half
+        throttle.onSuccess();
+        assertTrue(throttle.isRetryAllowed());   // 5.1 tokens
+    }
+
+    @Test
+    public void throttleTokensStayWithinBounds() {
+        ServiceConfig.RetryThrottle throttle = new ServiceConfig.RetryThrottle(10, 0.5);
+        for (int i = 0; i < 50; i++) throttle.onFailure();
+        assertFalse(throttle.isRetryAllowed());
+        for (int i = 0; i < 10; i++) throttle.onSuccess();
+        assertFalse(throttle.isRetryAllowed());  // 5 tokens: failures did not go below zero
+
+        for (int i = 0; i < 1000; i++) throttle.onSuccess();
+        for (int i = 0; i < 4; i++) throttle.onFailure();
+        assertTrue(throttle.isRetryAllowed());   // 6 tokens: successes stopped at maxTokens
+        throttle.onFailure();
+        assertFalse(throttle.isRetryAllowed());
+    }
+
+    @Test
+    public void sharesParsedConfigsByText() {
+        assertNull(ServiceConfig.forJson("  "));
+        ServiceConfig first = ServiceConfig.forJson(retryConfig(3));
+        assertSame(first, ServiceConfig.forJson(retryConfig(3) + "\n"));
+        assertSame(first.getRetryThrottle(), ServiceConfig.forJson(retryConfig(3)).getRetryThrottle());
+    }
+
+    private static String retryConfig(int maxAttempts) {
+        return "{\"methodConfig\": [{"
+                + "\"name\": [{\"service\": \"example.UserService\", \"method\": \"GetUser\"}],"
+                + "\"retryPolicy\": {\"maxAttempts\": " + maxAttempts + ", \"initialBackoff\": \"0.1s\","
+                + "  \"maxBackoff\": \"0.3s\", \"backoffMultiplier\": 2,"
+                + "  \"retryableStatusCodes\": [\"UNAVAILABLE\", \"8\"]}}],"
+                + "\"retryThrottling\": {\"maxTokens\": 10, \"tokenRatio\": 0.1}}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.badru.jmeter.grpcweb.preprocessor;
+
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that what an {@link AuthTokenPreProcessor} leaves for a sampler is used by that
+ * sampler only, and not by a later sampler of the same thread outside its scope.
+ */
+public class AuthTokenPreProcessorTest {
+    private JMeterVariables vars;
+
+    @Before
+    public void setUp() {
+        vars = new JMeterVariables();
+        JMeterContextService.getContext().setVariables(vars);
+    }
+
+    @After
+    public void tearDown() {
+        TokenCache.clear();
+        JMeterContextService.getContext().setVariables(null);
+    }
+
+    @Test
+    public void headersGoToTheNextSampleOnly() {
+        Map<String, String> headers = Collections.singletonMap("Authorization", "Bearer abc");
+        vars.putObject(AuthTokenPreProcessor.VAR_AUTH_HEADERS, headers);
+
+        // The sampler in scope
+        assertEquals(headers, AuthTokenPreProcessor.takeHeaders(vars));
+        assertNull(AuthTokenPreProcessor.takeError(vars));
+
+        // A sampler outside the scope, run next by the same thread
+        assertTrue(AuthTokenPreProcessor.takeHeaders(vars).isEmpty());
+        assertNull(vars.getObject(AuthTokenPreProcessor.VAR_AUTH_HEADERS));
+    }
+
+    @Test
+    public void loginErrorFailsTheNextSampleOnly() {
+        AuthTokenPreProcessor pre = new AuthTokenPreProcessor();
+        pre.setServiceName("auth.AuthService");
+        pre.setMethodName("Login");
+        // No proto file, so the login fails without a server
+        pre.process();
+
+        String error = AuthTokenPreProcessor.takeError(vars);
+        assertNotNull(error);
+        assertTrue(error, error.startsWith("Login via auth.AuthService/Login failed: "));
+        assertTrue(AuthTokenPreProcessor.takeHeaders(vars).isEmpty());
+
+        assertNull(AuthTokenPreProcessor.takeError(vars));
+        assertNull(vars.get(AuthTokenPreProcessor.VAR_AUTH_ERROR));
+    }
+
+    @Test
+    public void takesNothingWithoutVariables() {
+        assertTrue(AuthTokenPreProcessor.takeHeaders(null).isEmpty());
+        assertNull(AuthTokenPreProcessor.takeError(null));
+    }
+}
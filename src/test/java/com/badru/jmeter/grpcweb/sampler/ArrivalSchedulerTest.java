@@ -0,0 +1,161 @@
+package com.badru.jmeter.grpcweb.sampler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks slot reservation under contention, the step and Poisson schedules, waiting for a
+ * slot and the reported lag.
+ */
+public class ArrivalSchedulerTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @After
+    public void tearDown() {
+        ArrivalScheduler.resetAll();
+    }
+
+    @Test
+    public void constantRateSpacesSlotsEvenly() {
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 1000, 0, 0);
+        long first = scheduler.reserve();
+        assertEquals(first + MILLI, scheduler.reserve());
+        assertEquals(first + 2 * MILLI, scheduler.reserve());
+    }
+
+    @Test
+    public void concurrentReservationsNeverShareASlot() throws Exception {
+        final ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 1000, 0, 0);
+        final int threads = 8;
+        final int perThread = 2000;
+        final List<List<Long>> results = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final List<Long> slots = new ArrayList<>(perThread);
+            results.add(slots);
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) slots.add(scheduler.reserve());
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+
+        List<Long> all = new ArrayList<>();
+        for (List<Long> slots : results) all.addAll(slots);
+        assertEquals(threads * perThread, new HashSet<>(all).size());
+        Collections.sort(all);
+        for (int i = 1; i < all.size(); i++) {
+            assertEquals(MILLI, all.get(i) - all.get(i - 1));
+        }
+    }
+
+    @Test
+    public void stepModeRaisesTheRateEveryStep() {
+        // 10/s for the first second, then 20/s
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.STEP, 10, 10, 1);
+        long origin = scheduler.reserve();
+        long previous = origin;
+        long slot;
+        while ((slot = scheduler.reserve()) - origin < TimeUnit.SECONDS.toNanos(1)) {
+            assertEquals(100 * MILLI, slot - previous);
+            previous = slot;
+        }
+        assertEquals(TimeUnit.SECONDS.toNanos(1), slot - origin);
+        assertEquals(50 * MILLI, scheduler.reserve() - slot);
+    }
+
+    @Test
+    public void poissonModeKeepsTheMeanRate() {
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.POISSON, 1000, 0, 0);
+        int n = 50000;
+        long first = scheduler.reserve();
+        long previous = first;
+        Set<Long> gaps = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            long slot = scheduler.reserve();
+            assertTrue(slot > previous);
+            gaps.add(slot - previous);
+            previous = slot;
+        }
+        double meanGap = (previous - first) / (double) n;
+        assertEquals(MILLI, meanGap, MILLI * 0.05);
+        assertTrue("gaps should vary", gaps.size() > n / 2);
+    }
+
+    @Test
+    public void awaitSlotWaitsUntilTheSlot() {
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 1, 0, 0);
+        long slot = System.nanoTime() + 50 * MILLI;
+        assertTrue(scheduler.awaitSlot(slot));
+        assertTrue(System.nanoTime() >= slot);
+    }
+
+    @Test
+    public void awaitSlotGivesUpWhenInterrupted() {
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 1, 0, 0);
+        Thread.currentThread().interrupt();
+        try {
+            long start = System.nanoTime();
+            assertFalse(scheduler.awaitSlot(start + TimeUnit.SECONDS.toNanos(10)));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void recordStartReportsTheLag() {
+        ArrivalScheduler scheduler = new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 1, 0, 0);
+        assertTrue(scheduler.recordStart(System.nanoTime() - 40 * MILLI) >= 40 * MILLI);
+        assertEquals(0L, scheduler.recordStart(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void firstSamplerDecidesTheSharedSchedule() {
+        ArrivalScheduler first = ArrivalScheduler.forKey("svc/M", ArrivalScheduler.Mode.CONSTANT, 1000, 0, 0);
+        ArrivalScheduler other = ArrivalScheduler.forKey("svc/M", ArrivalScheduler.Mode.POISSON, 5, 0, 0);
+        assertSame(first, other);
+        long slot = other.reserve();
+        assertEquals(slot + MILLI, other.reserve());
+
+        ArrivalScheduler.resetAll();
+        assertNotSame(first, ArrivalScheduler.forKey("svc/M", ArrivalScheduler.Mode.CONSTANT, 1000, 0, 0));
+    }
+
+    @Test
+    public void parsesModes() {
+        assertNull(ArrivalScheduler.parseMode(null));
+        assertNull(ArrivalScheduler.parseMode(" "));
+        assertNull(ArrivalScheduler.parseMode("none"));
+        assertEquals(ArrivalScheduler.Mode.STEP, ArrivalScheduler.parseMode("step"));
+        assertEquals(ArrivalScheduler.Mode.POISSON, ArrivalScheduler.parseMode(" Poisson "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRates() {
+        new ArrivalScheduler("k", ArrivalScheduler.Mode.CONSTANT, 0, 0, 0);
+    }
+}
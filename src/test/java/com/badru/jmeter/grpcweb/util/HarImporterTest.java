@@ -0,0 +1,218 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Imports hand-written HAR captures against a small service and checks which calls are kept,
+ * their offsets and their re-framed bodies.
+ */
+public class HarImporterTest {
+    private static final String URL = "https://api.example.com/example.UserService/";
+    private static final byte[] GET_USER_7 = {0x00, 0, 0, 0, 2, 0x08, 0x07};
+    private static final byte[] TRAILERS = {(byte) 0x80, 0, 0, 0, 0};
+
+    private static ProtoFileParser parser;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void buildParser() throws IOException {
+        parser = userServiceParser();
+    }
+
+    @Test
+    public void importsTextAndBase64Calls() throws IOException {
+        JsonArray entries = new JsonArray();
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(GET_USER_7), null));
+        entries.add(entry("2024-05-01T10:00:01.500+00:00", "POST", URL + "GetUser",
+                "application/grpc-web+proto", base64(concat(TRAILERS, GET_USER_7)), "base64"));
+
+        List<WorkloadFile.Entry> imported = importHar(entries, 2);
+        WorkloadFile.Entry first = imported.get(0);
+        assertEquals(0L, first.getOffsetMillis());
+        assertEquals("example.UserService/GetUser", first.getMethod());
+        assertArrayEquals(GET_USER_7, first.getFrames());
+        assertEquals("{\"id\":7}", first.getJson());
+        assertEquals(1500L, imported.get(1).getOffsetMillis());
+        // The leading trailer frame is dropped when re-framing
+        assertArrayEquals(GET_USER_7, imported.get(1).getFrames());
+    }
+
+    @Test
+    public void ordersCallsByStartTime() throws IOException {
+        JsonArray entries = new JsonArray();
+        entries.add(entry("2024-05-01T10:00:02.000Z", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(frame(0x00, new byte[] {0x08, 0x03})), null));
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(frame(0x00, new byte[] {0x08, 0x01})), null));
+        entries.add(entry("2024-05-01T12:00:01.000+02:00", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(frame(0x00, new byte[] {0x08, 0x02})), null));
+
+        List<WorkloadFile.Entry> imported = importHar(entries, 3);
+        assertEquals(0L, imported.get(0).getOffsetMillis());
+        assertEquals("{\"id\":1}", imported.get(0).getJson());
+        assertEquals(1000L, imported.get(1).getOffsetMillis());
+        assertEquals("{\"id\":2}", imported.get(1).getJson());
+        assertEquals(2000L, imported.get(2).getOffsetMillis());
+        assertEquals("{\"id\":3}", imported.get(2).getJson());
+    }
+
+    @Test
+    public void skipsCallsThatCannotBeReplayed() throws IOException {
+        JsonArray entries = new JsonArray();
+        entries.add(entry("2024-05-01T10:00:00.000Z", "GET", URL + "GetUser",
+                "application/grpc-web-text", base64(GET_USER_7), null));
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", "https://api.example.com/login",
+                "application/json", "{}", null));
+        // Binary body stored as text by the browser: bytes may already be lost
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", URL + "GetUser",
+                "application/grpc-web+proto", new String(GET_USER_7, StandardCharsets.ISO_8859_1), null));
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", URL + "DeleteUser",
+                "application/grpc-web-text", base64(GET_USER_7), null));
+        entries.add(entry("2024-05-01T10:00:00.000Z", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(TRAILERS), null));
+        entries.add(entry("2024-05-01T10:00:03.000Z", "POST", URL + "GetUser",
+                "application/grpc-web-text", base64(GET_USER_7), null));
+
+        List<WorkloadFile.Entry> imported = importHar(entries, 1);
+        // Offsets start at the first call kept
+        assertEquals(0L, imported.get(0).getOffsetMillis());
+    }
+
+    @Test
+    public void firstDataFrameSkipsTrailerFrames() {
+        assertArrayEquals(new byte[] {0x08, 0x07}, HarImporter.firstDataFrame(concat(TRAILERS, GET_USER_7)));
+        assertArrayEquals(new byte[0], HarImporter.firstDataFrame(frame(0x00, new byte[0])));
+        // Compression flag set: still a data frame
+        assertArrayEquals(new byte[] {0x01}, HarImporter.firstDataFrame(frame(0x01, new byte[] {0x01})));
+    }
+
+    @Test
+    public void firstDataFrameRejectsBadBodies() {
+        assertRejected(new byte[0], "no gRPC-Web data frame");
+        assertRejected(TRAILERS, "no gRPC-Web data frame");
+        assertRejected(new byte[] {0x00, 0, 0, 0, 5, 0x08}, "truncated");
+        assertRejected(new byte[] {0x00, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}, "truncated");
+    }
+
+    private List<WorkloadFile.Entry> importHar(JsonArray entries, int expected) throws IOException {
+        JsonObject log = new JsonObject();
+        log.add("entries", entries);
+        JsonObject root = new JsonObject();
+        root.add("log", log);
+        Path har = folder.newFile("capture.har").toPath();
+        Files.write(har, root.toString().getBytes(StandardCharsets.UTF_8));
+        Path workload = folder.newFile("workload.bin").toPath();
+
+        assertEquals(expected, HarImporter.importHar(har, parser, workload));
+        List<WorkloadFile.Entry> imported = WorkloadFile.read(workload);
+        assertEquals(expected, imported.size());
+        return imported;
+    }
+
+    private static void assertRejected(byte[] body, String reason) {
+        try {
+            HarImporter.firstDataFrame(body);
+            fail("body accepted");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(reason));
+        }
+    }
+
+    private static JsonObject entry(String startedDateTime, String method, String url, String contentType,
+                                    String text, String encoding) {
+        JsonObject header = new JsonObject();
+        header.addProperty("name", "Content-Type");
+        header.addProperty("value", contentType);
+        JsonArray headers = new JsonArray();
+        headers.add(header);
+        JsonObject postData = new JsonObject();
+        postData.addProperty("mimeType", contentType);
+        postData.addProperty("text", text);
+        if (encoding != null) postData.addProperty("encoding", encoding);
+        JsonObject request = new JsonObject();
+        request.addProperty("method", method);
+        request.addProperty("url", url);
+        request.add("headers", headers);
+        request.add("postData", postData);
+        JsonObject entry = new JsonObject();
+        entry.addProperty("startedDateTime", startedDateTime);
+        entry.add("request", request);
+        return entry;
+    }
+
+    private static byte[] frame(int flag, byte[] payload) {
+        byte[] frame = new byte[5 + payload.length];
+        frame[0] = (byte) flag;
+        frame[1] = (byte) (payload.length >>> 24);
+        frame[2] = (byte) (payload.length >>> 16);
+        frame[3] = (byte) (payload.length >>> 8);
+        frame[4] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 5, payload.length);
+        return frame;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] both = new byte[a.length + b.length];
+        System.arraycopy(a, 0, both, 0, a.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static ProtoFileParser userServiceParser() throws IOException {
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("user.proto")
+                .setPackage("example")
+                .setSyntax("proto3")
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("GetUserRequest")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("User")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addService(DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                        .setName("UserService")
+                        .addMethod(DescriptorProtos.MethodDescriptorProto.newBuilder()
+                                .setName("GetUser")
+                                .setInputType(".example.GetUserRequest")
+                                .setOutputType(".example.User")))
+                .build();
+        ProtoFileParser parser = new ProtoFileParser();
+        parser.parseDescriptorSet(DescriptorProtos.FileDescriptorSet.newBuilder().addFile(file).build().toByteArray(),
+                "user.proto");
+        return parser;
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+}
@@ -0,0 +1,442 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Duration;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Empty;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.JsonFormat;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link JsonProtoCodec} reads and writes exactly what {@code JsonFormat} does,
+ * which the sampler uses when the compiled codec is off.
+ */
+public class JsonProtoCodecTest {
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().includingDefaultValueFields();
+    private static final JsonFormat.Parser PARSER = JsonFormat.parser().ignoringUnknownFields();
+
+    private static final String FULL_JSON = "{"
+            + "\"i32\": -42, \"i64\": \"-9223372036854775808\", \"u32\": 4294967295,"
+            + "\"u64\": \"18446744073709551615\", \"s32\": -7, \"s64\": \"-1234567890123\","
+            + "\"f32\": 3000000000, \"f64\": \"18446744073709551000\", \"sf32\": -2147483648,"
+            + "\"sf64\": 9007199254740993, \"flt\": 1.5e-10, \"dbl\": 1e21, \"flag\": true,"
+            + "\"text\": \"<b>Tom & Jerry's = \\\"friends\\\"</b>\\\\ \\n\\t\\r\\b\\f \\u0001 \\u007f \\u00e9 \\ud83d\\ude00 \\u2028\\u2029\","
+            + "\"data\": \"AAEC/f7/\", \"color\": \"GREEN\","
+            + "\"inner\": {\"value\": 5, \"label\": \"five\"},"
+            + "\"packedInts\": [1, -2, 300], \"unpacked_ints\": [4, 5], \"longs\": [\"1\", 2, \"-3\"],"
+            + "\"colors\": [\"RED\", \"COLOR_UNSPECIFIED\", \"GREEN\"], \"names\": [\"a\", \"\", \"c<d>\"],"
+            + "\"inners\": [{\"value\": 1}, {}, {\"label\": \"x\"}],"
+            + "\"counts\": {\"a<b\": 1, \"\": 2, \"line\\nbreak\": 3},"
+            + "\"byId\": {\"-5\": {\"value\": 9}, \"9007199254740993\": {}},"
+            + "\"flags\": {\"true\": \"RED\", \"false\": \"COLOR_UNSPECIFIED\"},"
+            + "\"labels\": {\"4294967295\": \"max\", \"0\": \"zero\"},"
+            + "\"choiceInner\": {\"value\": 3},"
+            + "\"maybe\": 0,"
+            + "\"created\": \"2020-01-02T03:04:05.123Z\", \"elapsed\": \"1.500s\","
+            + "\"details\": {\"a\": 1, \"b\": [true, null, \"x\", {\"deep\": {}}], \"c\": {}},"
+            + "\"dynamic\": null, \"wrapped\": \"42\", \"mask\": \"fooBar,baz\", \"nothing\": {},"
+            + "\"times\": [\"1970-01-01T00:00:00Z\", \"2038-01-19T03:14:08Z\"],"
+            + "\"values\": {\"k\": null, \"n\": 2.5, \"o\": {\"p\": [1, \"two\"]}},"
+            + "\"tree\": {\"name\": \"root\", \"child\": {\"name\": \"a\", \"child\": {}},"
+            + "  \"children\": [{\"name\": \"b\", \"children\": [{}]}, {}]},"
+            + "\"list\": [1, \"two\", [], {}],"
+            + "\"display_name\": \"Jane\","
+            + "\"unknownField\": {\"ignored\": [1, 2]}"
+            + "}";
+
+    private static Descriptors.Descriptor everything;
+    private static Descriptors.Descriptor legacy;
+
+    @BeforeClass
+    public static void buildTypes() throws Descriptors.DescriptorValidationException {
+        everything = buildProto3File().findMessageTypeByName("Everything");
+        legacy = buildProto2File().findMessageTypeByName("Legacy");
+    }
+
+    // ---------------------------------------------------------------- printing
+
+    @Test
+    public void printsEmptyMessageLikeJsonFormat() throws IOException {
+        assertPrintsLikeJsonFormat(everything, new byte[0]);
+        assertPrintsLikeJsonFormat(legacy, new byte[0]);
+    }
+
+    @Test
+    public void printsEveryFieldKindLikeJsonFormat() throws IOException {
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything, FULL_JSON));
+    }
+
+    @Test
+    public void printsSpecialFloatsLikeJsonFormat() throws IOException {
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything,
+                "{\"flt\": \"NaN\", \"dbl\": \"-Infinity\"}"));
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything,
+                "{\"flt\": \"Infinity\", \"dbl\": -0.0}"));
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything,
+                "{\"flt\": 0.1, \"dbl\": 123456789.125}"));
+    }
+
+    @Test
+    public void printsOneofMembersLikeJsonFormat() throws IOException {
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything, "{\"choiceText\": \"\"}"));
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything, "{\"choiceNumber\": \"0\"}"));
+        assertPrintsLikeJsonFormat(everything, jsonFormatBytes(everything, "{\"choiceInner\": {}}"));
+
+        // On the wire, the last member of a oneof wins
+        Wire wire = new Wire();
+        wire.out.writeString(28, "first");
+        wire.out.writeInt64(30, 7);
+        assertPrintsLikeJsonFormat(everything, wire.bytes());
+    }
+
+    @Test
+    public void printsRepeatedMessageOccurrencesMergedLikeJsonFormat() throws IOException {
+        Wire wire = new Wire();
+        wire.out.writeByteArray(17, jsonFormatBytes(everything.findFieldByName("inner").getMessageType(),
+                "{\"value\": 1}"));
+        wire.out.writeByteArray(17, jsonFormatBytes(everything.findFieldByName("inner").getMessageType(),
+                "{\"label\": \"merged\"}"));
+        assertPrintsLikeJsonFormat(everything, wire.bytes());
+    }
+
+    @Test
+    public void printsPackedAndUnpackedEncodingsLikeJsonFormat() throws IOException {
+        // packed_ints written unpacked and unpacked_ints written packed: both must be read
+        Wire wire = new Wire();
+        wire.out.writeInt32(18, 1);
+        wire.out.writeInt32(18, -1);
+        wire.out.writeTag(19, 2);
+        wire.out.writeUInt32NoTag(3);
+        wire.out.writeInt32NoTag(7);
+        wire.out.writeInt32NoTag(8);
+        wire.out.writeInt32NoTag(9);
+        wire.out.writeInt32(19, 10);
+        wire.out.writeTag(21, 2);
+        wire.out.writeUInt32NoTag(2);
+        wire.out.writeEnumNoTag(1);
+        wire.out.writeEnumNoTag(2);
+        assertPrintsLikeJsonFormat(everything, wire.bytes());
+    }
+
+    @Test
+    public void printsUnknownEnumNumbersLikeJsonFormat() throws IOException {
+        Wire wire = new Wire();
+        wire.out.writeEnum(16, 99);
+        wire.out.writeEnum(21, 1);
+        wire.out.writeEnum(21, 77);
+        Wire entry = new Wire();
+        entry.out.writeBool(1, true);
+        entry.out.writeEnum(2, 55);
+        wire.out.writeByteArray(26, entry.bytes());
+        assertPrintsLikeJsonFormat(everything, wire.bytes());
+    }
+
+    @Test
+    public void printsClosedEnumsLikeJsonFormat() throws IOException {
+        // Unknown numbers of a proto2 enum are not field values, so the default is printed
+        Wire wire = new Wire();
+        wire.out.writeEnum(3, 99);
+        wire.out.writeEnum(4, 2);
+        wire.out.writeEnum(4, 99);
+        wire.out.writeEnum(4, 1);
+        assertPrintsLikeJsonFormat(legacy, wire.bytes());
+    }
+
+    @Test
+    public void printsProto2DefaultsLikeJsonFormat() throws IOException {
+        assertPrintsLikeJsonFormat(legacy, jsonFormatBytes(legacy,
+                "{\"count\": 3, \"next\": {\"name\": \"inner\", \"next\": {}}}"));
+    }
+
+    @Test
+    public void printsUnknownFieldsLikeJsonFormat() throws IOException {
+        Wire wire = new Wire();
+        wire.out.writeString(1000, "skipped");
+        wire.out.writeInt32(1, 5);
+        wire.out.writeFixed64(1001, 1L);
+        assertPrintsLikeJsonFormat(everything, wire.bytes());
+    }
+
+    @Test
+    public void printedJsonParsesBackToTheSameMessage() throws IOException {
+        byte[] bytes = jsonFormatBytes(everything, FULL_JSON);
+        JsonProtoCodec codec = JsonProtoCodec.forType(everything);
+        assertEquals(DynamicMessage.parseFrom(everything, bytes),
+                DynamicMessage.parseFrom(everything, codec.jsonToBytes(codec.bytesToJson(bytes))));
+    }
+
+    // ---------------------------------------------------------------- parsing
+
+    @Test
+    public void parsesEveryFieldKindLikeJsonFormat() throws IOException {
+        assertParsesLikeJsonFormat(everything, FULL_JSON);
+        assertParsesLikeJsonFormat(everything, "{}");
+        assertParsesLikeJsonFormat(legacy, "{}");
+    }
+
+    @Test
+    public void parsesNumbersGivenAsStringsOrNumbersLikeJsonFormat() throws IOException {
+        assertParsesLikeJsonFormat(everything, "{\"i32\": \"-5\", \"i64\": 123, \"u32\": \"7\", \"u64\": 1e3,"
+                + " \"s64\": \"9223372036854775807\", \"f64\": \"0\", \"sf32\": 1.0, \"flt\": \"2.5\", \"dbl\": \"NaN\"}");
+        assertParsesLikeJsonFormat(everything, "{\"flt\": \"-Infinity\", \"dbl\": \"Infinity\", \"flag\": \"false\"}");
+    }
+
+    @Test
+    public void parsesEnumsLikeJsonFormat() throws IOException {
+        // Unknown names are skipped; unknown numbers are kept for open (proto3) enums
+        assertParsesLikeJsonFormat(everything, "{\"color\": 99, \"colors\": [\"RED\", 42, \"NOPE\", \"2\"],"
+                + " \"flags\": {\"true\": \"NOPE\", \"false\": 7}}");
+        assertParsesLikeJsonFormat(everything, "{\"color\": \"NOPE\"}");
+        assertParsesLikeJsonFormat(everything, "{\"color\": \"1\"}");
+        // ... and dropped for closed (proto2) enums
+        assertParsesLikeJsonFormat(legacy, "{\"level\": 99, \"levels\": [\"HIGH\", 5, 1]}");
+    }
+
+    @Test
+    public void parsesBytesLikeJsonFormat() throws IOException {
+        assertParsesLikeJsonFormat(everything, "{\"data\": \"+/+/\"}");
+        assertParsesLikeJsonFormat(everything, "{\"data\": \"-_-_\"}");
+        assertParsesLikeJsonFormat(everything, "{\"data\": \"\"}");
+    }
+
+    @Test
+    public void parsesNullsLikeJsonFormat() throws IOException {
+        assertParsesLikeJsonFormat(everything, "{\"i32\": null, \"inner\": null, \"names\": null,"
+                + " \"counts\": null, \"created\": null, \"dynamic\": null, \"choiceText\": null, \"choiceNumber\": \"3\"}");
+    }
+
+    @Test
+    public void parsesRecursiveMessagesLikeJsonFormat() throws IOException {
+        assertParsesLikeJsonFormat(everything, "{\"tree\": {\"child\": {\"child\": {\"child\": {\"name\": \"leaf\"}}},"
+                + " \"children\": [{\"children\": [{\"children\": [{}]}]}]}}");
+        assertParsesLikeJsonFormat(legacy, "{\"next\": {\"next\": {\"count\": 1}}}");
+    }
+
+    @Test
+    public void rejectsAFieldSetTwiceLikeJsonFormat() {
+        assertBothReject(everything, "{\"display_name\": \"a\", \"displayName\": \"b\"}");
+        assertBothReject(everything, "{\"packed_ints\": [1], \"packedInts\": [2]}");
+    }
+
+    @Test
+    public void rejectsTwoMembersOfAOneofLikeJsonFormat() {
+        assertBothReject(everything, "{\"choiceText\": \"a\", \"choiceNumber\": \"5\"}");
+        assertBothReject(everything, "{\"choiceInner\": {}, \"choice_text\": \"\"}");
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private static void assertPrintsLikeJsonFormat(Descriptors.Descriptor type, byte[] bytes) throws IOException {
+        String expected = PRINTER.print(DynamicMessage.parseFrom(type, bytes));
+        assertEquals(expected, JsonProtoCodec.forType(type).bytesToJson(bytes));
+    }
+
+    private static void assertParsesLikeJsonFormat(Descriptors.Descriptor type, String json) throws IOException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(type);
+        PARSER.merge(json, builder);
+        DynamicMessage actual = DynamicMessage.parseFrom(type, JsonProtoCodec.forType(type).jsonToBytes(json));
+        assertEquals(builder.build(), actual);
+    }
+
+    private static void assertBothReject(Descriptors.Descriptor type, String json) {
+        try {
+            PARSER.merge(json, DynamicMessage.newBuilder(type));
+            fail("JsonFormat accepted " + json);
+        } catch (InvalidProtocolBufferException expected) {
+            // as it should
+        }
+        try {
+            JsonProtoCodec.forType(type).jsonToBytes(json);
+            fail("JsonProtoCodec accepted " + json);
+        } catch (IOException expected) {
+            // as it should
+        }
+    }
+
+    private static byte[] jsonFormatBytes(Descriptors.Descriptor type, String json) throws IOException {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(type);
+        PARSER.merge(json, builder);
+        return builder.build().toByteArray();
+    }
+
+    /** Hand-written wire bytes, for encodings JsonFormat itself never produces. */
+    private static final class Wire {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+
+        byte[] bytes() throws IOException {
+            out.flush();
+            return buffer.toByteArray();
+        }
+    }
+
+    // ---------------------------------------------------------------- test types
+
+    private static Descriptors.FileDescriptor buildProto3File() throws Descriptors.DescriptorValidationException {
+        Descriptors.FileDescriptor[] dependencies = {
+                Timestamp.getDescriptor().getFile(), Duration.getDescriptor().getFile(),
+                Struct.getDescriptor().getFile(), Int64Value.getDescriptor().getFile(),
+                FieldMask.getDescriptor().getFile(), Empty.getDescriptor().getFile()};
+
+        DescriptorProtos.DescriptorProto inner = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Inner")
+                .addField(field("value", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                .addField(field("label", 2, FieldDescriptorProto.Type.TYPE_STRING))
+                .build();
+        DescriptorProtos.DescriptorProto node = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Node")
+                .addField(field("name", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(message("child", 2, ".codectest.Node"))
+                .addField(repeated(message("children", 3, ".codectest.Node")))
+                .build();
+        DescriptorProtos.DescriptorProto everything = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Everything")
+                .addField(field("i32", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                .addField(field("i64", 2, FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(field("u32", 3, FieldDescriptorProto.Type.TYPE_UINT32))
+                .addField(field("u64", 4, FieldDescriptorProto.Type.TYPE_UINT64))
+                .addField(field("s32", 5, FieldDescriptorProto.Type.TYPE_SINT32))
+                .addField(field("s64", 6, FieldDescriptorProto.Type.TYPE_SINT64))
+                .addField(field("f32", 7, FieldDescriptorProto.Type.TYPE_FIXED32))
+                .addField(field("f64", 8, FieldDescriptorProto.Type.TYPE_FIXED64))
+                .addField(field("sf32", 9, FieldDescriptorProto.Type.TYPE_SFIXED32))
+                .addField(field("sf64", 10, FieldDescriptorProto.Type.TYPE_SFIXED64))
+                .addField(field("flt", 11, FieldDescriptorProto.Type.TYPE_FLOAT))
+                .addField(field("dbl", 12, FieldDescriptorProto.Type.TYPE_DOUBLE))
+                .addField(field("flag", 13, FieldDescriptorProto.Type.TYPE_BOOL))
+                .addField(field("text", 14, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("data", 15, FieldDescriptorProto.Type.TYPE_BYTES))
+                .addField(field("color", 16, FieldDescriptorProto.Type.TYPE_ENUM).setTypeName(".codectest.Color"))
+                .addField(message("inner", 17, ".codectest.Inner"))
+                .addField(repeated(field("packed_ints", 18, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addField(repeated(field("unpacked_ints", 19, FieldDescriptorProto.Type.TYPE_INT32))
+                        .setOptions(DescriptorProtos.FieldOptions.newBuilder().setPacked(false)))
+                .addField(repeated(field("longs", 20, FieldDescriptorProto.Type.TYPE_INT64)))
+                .addField(repeated(field("colors", 21, FieldDescriptorProto.Type.TYPE_ENUM)
+                        .setTypeName(".codectest.Color")))
+                .addField(repeated(field("names", 22, FieldDescriptorProto.Type.TYPE_STRING)))
+                .addField(repeated(message("inners", 23, ".codectest.Inner")))
+                .addField(repeated(message("counts", 24, ".codectest.Everything.CountsEntry")))
+                .addField(repeated(message("by_id", 25, ".codectest.Everything.ByIdEntry")))
+                .addField(repeated(message("flags", 26, ".codectest.Everything.FlagsEntry")))
+                .addField(repeated(message("labels", 27, ".codectest.Everything.LabelsEntry")))
+                .addField(field("choice_text", 28, FieldDescriptorProto.Type.TYPE_STRING).setOneofIndex(0))
+                .addField(message("choice_inner", 29, ".codectest.Inner").setOneofIndex(0))
+                .addField(field("choice_number", 30, FieldDescriptorProto.Type.TYPE_INT64).setOneofIndex(0))
+                .addField(field("maybe", 31, FieldDescriptorProto.Type.TYPE_INT32).setOneofIndex(1).setProto3Optional(true))
+                .addField(message("created", 32, ".google.protobuf.Timestamp"))
+                .addField(message("elapsed", 33, ".google.protobuf.Duration"))
+                .addField(message("details", 34, ".google.protobuf.Struct"))
+                .addField(message("dynamic", 35, ".google.protobuf.Value"))
+                .addField(message("wrapped", 36, ".google.protobuf.Int64Value"))
+                .addField(message("mask", 37, ".google.protobuf.FieldMask"))
+                .addField(message("nothing", 38, ".google.protobuf.Empty"))
+                .addField(repeated(message("times", 39, ".google.protobuf.Timestamp")))
+                .addField(repeated(message("values", 40, ".codectest.Everything.ValuesEntry")))
+                .addField(message("tree", 41, ".codectest.Node"))
+                .addField(message("list", 42, ".google.protobuf.ListValue"))
+                .addField(field("display_name", 43, FieldDescriptorProto.Type.TYPE_STRING))
+                .addOneofDecl(DescriptorProtos.OneofDescriptorProto.newBuilder().setName("choice"))
+                .addOneofDecl(DescriptorProtos.OneofDescriptorProto.newBuilder().setName("_maybe"))
+                .addNestedType(mapEntry("CountsEntry", FieldDescriptorProto.Type.TYPE_STRING,
+                        field("value", 2, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addNestedType(mapEntry("ByIdEntry", FieldDescriptorProto.Type.TYPE_INT64,
+                        message("value", 2, ".codectest.Inner")))
+                .addNestedType(mapEntry("FlagsEntry", FieldDescriptorProto.Type.TYPE_BOOL,
+                        field("value", 2, FieldDescriptorProto.Type.TYPE_ENUM).setTypeName(".codectest.Color")))
+                .addNestedType(mapEntry("LabelsEntry", FieldDescriptorProto.Type.TYPE_UINT32,
+                        field("value", 2, FieldDescriptorProto.Type.TYPE_STRING)))
+                .addNestedType(mapEntry("ValuesEntry", FieldDescriptorProto.Type.TYPE_STRING,
+                        message("value", 2, ".google.protobuf.Value")))
+                .build();
+        DescriptorProtos.EnumDescriptorProto color = DescriptorProtos.EnumDescriptorProto.newBuilder()
+                .setName("Color")
+                .addValue(enumValue("COLOR_UNSPECIFIED", 0))
+                .addValue(enumValue("RED", 1))
+                .addValue(enumValue("GREEN", 2))
+                .build();
+
+        DescriptorProtos.FileDescriptorProto.Builder file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("codectest.proto")
+                .setPackage("codectest")
+                .setSyntax("proto3")
+                .addMessageType(inner)
+                .addMessageType(node)
+                .addMessageType(everything)
+                .addEnumType(color);
+        for (Descriptors.FileDescriptor dependency : dependencies) {
+            file.addDependency(dependency.getName());
+        }
+        return Descriptors.FileDescriptor.buildFrom(file.build(), dependencies);
+    }
+
+    private static Descriptors.FileDescriptor buildProto2File() throws Descriptors.DescriptorValidationException {
+        DescriptorProtos.DescriptorProto legacy = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Legacy")
+                .addField(field("count", 1, FieldDescriptorProto.Type.TYPE_INT32).setDefaultValue("7"))
+                .addField(field("name", 2, FieldDescriptorProto.Type.TYPE_STRING).setDefaultValue("x<y"))
+                .addField(field("level", 3, FieldDescriptorProto.Type.TYPE_ENUM).setTypeName(".codectest2.Level"))
+                .addField(repeated(field("levels", 4, FieldDescriptorProto.Type.TYPE_ENUM)
+                        .setTypeName(".codectest2.Level")))
+                .addField(message("next", 5, ".codectest2.Legacy"))
+                .build();
+        DescriptorProtos.EnumDescriptorProto level = DescriptorProtos.EnumDescriptorProto.newBuilder()
+                .setName("Level")
+                .addValue(enumValue("LOW", 1))
+                .addValue(enumValue("HIGH", 2))
+                .build();
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("codectest2.proto")
+                .setPackage("codectest2")
+                .setSyntax("proto2")
+                .addMessageType(legacy)
+                .addEnumType(level)
+                .build();
+        return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0]);
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    private static FieldDescriptorProto.Builder message(String name, int number, String typeName) {
+        return field(name, number, FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName(typeName);
+    }
+
+    private static FieldDescriptorProto.Builder repeated(FieldDescriptorProto.Builder field) {
+        return field.setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+    }
+
+    private static DescriptorProtos.DescriptorProto mapEntry(String name, FieldDescriptorProto.Type keyType,
+                                                             FieldDescriptorProto.Builder value) {
+        return DescriptorProtos.DescriptorProto.newBuilder()
+                .setName(name)
+                .addField(field("key", 1, keyType))
+                .addField(value)
+                .setOptions(DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true))
+                .build();
+    }
+
+    private static DescriptorProtos.EnumValueDescriptorProto.Builder enumValue(String name, int number) {
+        return DescriptorProtos.EnumValueDescriptorProto.newBuilder().setName(name).setNumber(number);
+    }
+}
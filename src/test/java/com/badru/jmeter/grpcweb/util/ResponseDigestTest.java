@@ -0,0 +1,206 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the streamed digest against hashing the printed JSON in one go, including text whose
+ * surrogate pairs straddle the sink's buffers, and the field checksums.
+ */
+public class ResponseDigestTest {
+    private static final JsonFormat.Printer REFERENCE = JsonFormat.printer()
+            .includingDefaultValueFields()
+            .sortingMapKeys();
+    private static final List<String> NO_FIELDS = Collections.emptyList();
+
+    private static Descriptors.Descriptor response;
+    private static Descriptors.Descriptor inner;
+
+    @BeforeClass
+    public static void buildTypes() throws Descriptors.DescriptorValidationException {
+        Descriptors.FileDescriptor file = buildFile();
+        response = file.findMessageTypeByName("Response");
+        inner = file.findMessageTypeByName("Inner");
+    }
+
+    @Test
+    public void matchesTheDigestOfThePrintedJson() throws IOException {
+        Message message = response("h\u00e9llo", 42L, "ann", "a", 1, "b", 2);
+        ResponseDigest digest = ResponseDigest.compute(message, 1 << 20, NO_FIELDS);
+
+        byte[] json = REFERENCE.print(message).getBytes(StandardCharsets.UTF_8);
+        assertEquals(Hashes.sha256Hex(json), digest.getDigest());
+        assertEquals(json.length, digest.getTotalBytes());
+        assertEquals(REFERENCE.print(message), digest.getPrefix());
+        assertFalse(digest.isTruncated());
+    }
+
+    @Test
+    public void ignoresTheOrderOfMapEntries() throws IOException {
+        Message forward = response("x", 1L, "ann", "a", 1, "b", 2);
+        Message backward = response("x", 1L, "ann", "b", 2, "a", 1);
+        assertNotEquals("entries should print in wire order unless sorted",
+                JsonFormat.printer().print(forward), JsonFormat.printer().print(backward));
+
+        assertEquals(ResponseDigest.compute(forward, 0, NO_FIELDS).getDigest(),
+                ResponseDigest.compute(backward, 0, NO_FIELDS).getDigest());
+        assertEquals(ResponseDigest.compute(forward, 0, Collections.singletonList("counts")).getFieldChecksums(),
+                ResponseDigest.compute(backward, 0, Collections.singletonList("counts")).getFieldChecksums());
+    }
+
+    @Test
+    public void encodesSurrogatePairsSplitAcrossBuffers() throws IOException {
+        // Slide an emoji across the 1024-char buffer boundary so its high surrogate lands last
+        for (int padding = 990; padding < 1040; padding++) {
+            assertDigestsLikeReference(response(repeat("x", padding) + "\ud83d\ude00\u00e9", 0L, "", "k", 0));
+        }
+        assertDigestsLikeReference(response(repeat("\ud83d\ude00", 3000), 0L, "", "k", 0));
+    }
+
+    @Test
+    public void keepsACappedPrefix() throws IOException {
+        Message message = response("hello", 0L, "", "k", 0);
+        ResponseDigest digest = ResponseDigest.compute(message, 10, NO_FIELDS);
+        assertEquals(REFERENCE.print(message).substring(0, 10), digest.getPrefix());
+        assertTrue(digest.isTruncated());
+
+        ResponseDigest none = ResponseDigest.compute(message, -1, NO_FIELDS);
+        assertEquals("", none.getPrefix());
+        assertEquals(digest.getDigest(), none.getDigest());
+    }
+
+    @Test
+    public void fieldChecksumsIgnoreOtherFields() throws IOException {
+        List<String> paths = Arrays.asList("inner.name", "text");
+        ResponseDigest first = ResponseDigest.compute(response("same", 1L, "ann", "k", 0), 0, paths);
+        ResponseDigest later = ResponseDigest.compute(response("same", 2L, "ann", "k", 0), 0, paths);
+        ResponseDigest renamed = ResponseDigest.compute(response("same", 1L, "bob", "k", 0), 0, paths);
+
+        assertNotEquals(first.getDigest(), later.getDigest());
+        assertEquals(first.getFieldChecksums(), later.getFieldChecksums());
+        assertEquals(paths, new ArrayList<>(first.getFieldChecksums().keySet()));
+        assertEquals(16, first.getFieldChecksums().get("text").length());
+        assertNotEquals(first.getFieldChecksums().get("inner.name"), renamed.getFieldChecksums().get("inner.name"));
+        assertEquals(first.getFieldChecksums().get("text"), renamed.getFieldChecksums().get("text"));
+    }
+
+    @Test
+    public void acceptsJsonFieldNames() throws IOException {
+        Message message = response("x", 7L, "", "k", 0);
+        assertEquals(ResponseDigest.compute(message, 0, Collections.singletonList("created_at")).getFieldChecksums()
+                        .get("created_at"),
+                ResponseDigest.compute(message, 0, Collections.singletonList("createdAt")).getFieldChecksums()
+                        .get("createdAt"));
+    }
+
+    @Test
+    public void rejectsBadFieldPaths() throws IOException {
+        Message message = response("x", 0L, "", "k", 0);
+        assertRejected(message, "missing", "not found");
+        assertRejected(message, "inner.missing", "not found");
+        assertRejected(message, "items.name", "singular message fields");
+        assertRejected(message, "text.length", "singular message fields");
+    }
+
+    private static void assertDigestsLikeReference(Message message) throws IOException {
+        byte[] json = REFERENCE.print(message).getBytes(StandardCharsets.UTF_8);
+        ResponseDigest digest = ResponseDigest.compute(message, 0, NO_FIELDS);
+        assertEquals(Hashes.sha256Hex(json), digest.getDigest());
+        assertEquals(json.length, digest.getTotalBytes());
+    }
+
+    private static void assertRejected(Message message, String path, String reason) throws IOException {
+        try {
+            ResponseDigest.compute(message, 0, Collections.singletonList(path));
+            fail(path + " accepted");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(path));
+            assertTrue(expected.getMessage(), expected.getMessage().contains(reason));
+        }
+    }
+
+    /** A response with the given map entries, written in the order given. */
+    private static Message response(String text, long createdAt, String name, Object... entries) {
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(response)
+                .setField(response.findFieldByName("text"), text)
+                .setField(response.findFieldByName("created_at"), createdAt)
+                .setField(response.findFieldByName("inner"), DynamicMessage.newBuilder(inner)
+                        .setField(inner.findFieldByName("name"), name)
+                        .build());
+        Descriptors.FieldDescriptor counts = response.findFieldByName("counts");
+        Descriptors.Descriptor entry = counts.getMessageType();
+        for (int i = 0; i < entries.length; i += 2) {
+            builder.addRepeatedField(counts, DynamicMessage.newBuilder(entry)
+                    .setField(entry.findFieldByName("key"), entries[i])
+                    .setField(entry.findFieldByName("value"), entries[i + 1])
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    private static Descriptors.FileDescriptor buildFile() throws Descriptors.DescriptorValidationException {
+        DescriptorProtos.DescriptorProto innerType = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Inner")
+                .addField(field("name", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .build();
+        DescriptorProtos.DescriptorProto countsEntry = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("CountsEntry")
+                .addField(field("key", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("value", 2, FieldDescriptorProto.Type.TYPE_INT32))
+                .setOptions(DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true))
+                .build();
+        DescriptorProtos.DescriptorProto responseType = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Response")
+                .addField(field("text", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(field("created_at", 2, FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(field("inner", 3, FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName(".digesttest.Inner"))
+                .addField(field("items", 4, FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName(".digesttest.Inner")
+                        .setLabel(FieldDescriptorProto.Label.LABEL_REPEATED))
+                .addField(field("counts", 5, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(".digesttest.Response.CountsEntry")
+                        .setLabel(FieldDescriptorProto.Label.LABEL_REPEATED))
+                .addNestedType(countsEntry)
+                .build();
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("digesttest.proto")
+                .setPackage("digesttest")
+                .setSyntax("proto3")
+                .addMessageType(innerType)
+                .addMessageType(responseType)
+                .build();
+        return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0]);
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+}
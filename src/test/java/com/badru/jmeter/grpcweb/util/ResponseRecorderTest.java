@@ -0,0 +1,174 @@
+package com.badru.jmeter.grpcweb.util;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DynamicMessage;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes recordings with {@link ResponseRecorder} and reads them back with
+ * {@link ResponseRecordReader}.
+ */
+public class ResponseRecorderTest {
+    private static final byte[] TRAILERS = "grpc-status:0\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        ResponseRecorder.closeAll();
+    }
+
+    @Test
+    public void readsBackWhatWasRecorded() throws IOException {
+        File file = folder.newFile("responses.bin");
+        ResponseRecorder recorder = ResponseRecorder.forFile(file.getPath(), 16);
+        byte[] frames = frames(new byte[] {0x08, 0x2a});
+        assertTrue(recorder.record(1700000000123L, "example.UserService/GetUser", 200, 0, 12, 15, frames));
+        assertTrue(recorder.record(1700000000456L, "example.UserService/Gr\u00fc\u00dfe", 503, 14, 3, 4, null));
+        ResponseRecorder.closeAll();
+
+        List<ResponseRecordReader.Record> records = readAll(file);
+        assertEquals(2, records.size());
+        ResponseRecordReader.Record first = records.get(0);
+        assertEquals(1700000000123L, first.getTimestampMillis());
+        assertEquals("example.UserService/GetUser", first.getMethod());
+        assertEquals(200, first.getHttpStatus());
+        assertEquals(0, first.getGrpcStatus());
+        assertEquals(12, first.getLatencyMillis());
+        assertEquals(15, first.getElapsedMillis());
+        assertArrayEquals(frames, first.getFrames());
+        ResponseRecordReader.Record second = records.get(1);
+        assertEquals("example.UserService/Gr\u00fc\u00dfe", second.getMethod());
+        assertEquals(14, second.getGrpcStatus());
+        assertEquals(0, second.getFrames().length);
+    }
+
+    @Test
+    public void keepsRecordsInOrderAcrossManyWrites() throws IOException {
+        File file = folder.newFile("many.bin");
+        ResponseRecorder recorder = ResponseRecorder.forFile(file.getPath(), 100000);
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            assertTrue(recorder.record(i, "a.S/M", 200, 0, i % 7, i % 11, frames(new byte[i % 300])));
+        }
+        ResponseRecorder.closeAll();
+
+        List<ResponseRecordReader.Record> records = readAll(file);
+        assertEquals(n, records.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, records.get(i).getTimestampMillis());
+            assertEquals(5 + i % 300 + 5 + TRAILERS.length, records.get(i).getFrames().length);
+        }
+    }
+
+    @Test
+    public void appendsToAnExistingRecording() throws IOException {
+        File file = folder.newFile("appended.bin");
+        ResponseRecorder.forFile(file.getPath(), 16).record(1, "a.S/M", 200, 0, 1, 1, null);
+        ResponseRecorder.closeAll();
+        ResponseRecorder.forFile(file.getPath(), 16).record(2, "a.S/M", 200, 0, 1, 1, null);
+        ResponseRecorder.closeAll();
+
+        List<ResponseRecordReader.Record> records = readAll(file);
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).getTimestampMillis());
+    }
+
+    @Test
+    public void decodesTheFirstDataFrame() throws IOException {
+        File file = folder.newFile("decoded.bin");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeFrame(body, 0x80, TRAILERS);  // a trailer frame first is skipped
+        writeFrame(body, 0x00, new byte[] {0x08, 0x07, 0x12, 0x03, 'a', 'n', 'n'});
+        ResponseRecorder recorder = ResponseRecorder.forFile(file.getPath(), 16);
+        recorder.record(1, "example.UserService/GetUser", 200, 0, 1, 1, body.toByteArray());
+        recorder.record(2, "example.UserService/GetUser", 200, 5, 1, 1, trailerOnly());
+        ResponseRecorder.closeAll();
+
+        ProtoFileParser parser = userServiceParser();
+        List<ResponseRecordReader.Record> records = readAll(file);
+        DynamicMessage user = records.get(0).decode(parser);
+        assertEquals(7, user.getField(user.getDescriptorForType().findFieldByName("id")));
+        assertEquals("ann", user.getField(user.getDescriptorForType().findFieldByName("name")));
+        assertNull(records.get(1).decode(parser));
+    }
+
+    private static List<ResponseRecordReader.Record> readAll(File file) throws IOException {
+        List<ResponseRecordReader.Record> records = new ArrayList<>();
+        ResponseRecordReader.forEach(file.toPath(), records::add);
+        return records;
+    }
+
+    /** A gRPC-Web body with one data frame followed by an OK trailer frame. */
+    private static byte[] frames(byte[] message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFrame(out, 0x00, message);
+        writeFrame(out, 0x80, TRAILERS);
+        return out.toByteArray();
+    }
+
+    private static byte[] trailerOnly() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFrame(out, 0x80, "grpc-status:5\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int flag, byte[] payload) {
+        out.write(flag);
+        out.write(payload.length >>> 24);
+        out.write(payload.length >>> 16);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static ProtoFileParser userServiceParser() throws IOException {
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("user.proto")
+                .setPackage("example")
+                .setSyntax("proto3")
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("GetUserRequest")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT32)))
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder()
+                        .setName("User")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                        .addField(field("name", 2, FieldDescriptorProto.Type.TYPE_STRING)))
+                .addService(DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                        .setName("UserService")
+                        .addMethod(DescriptorProtos.MethodDescriptorProto.newBuilder()
+                                .setName("GetUser")
+                                .setInputType(".example.GetUserRequest")
+                                .setOutputType(".example.User")))
+                .build();
+        ProtoFileParser parser = new ProtoFileParser();
+        parser.parseDescriptorSet(DescriptorProtos.FileDescriptorSet.newBuilder().addFile(file).build().toByteArray(),
+                "user.proto");
+        return parser;
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+}
@@ -0,0 +1,74 @@
+package com.badru.jmeter.grpcweb.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Writes workloads and reads them back. */
+public class WorkloadFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        Path file = folder.newFile("workload.bin").toPath();
+        byte[] frames = {0, 0, 0, 0, 2, 0x08, 0x07};
+        WorkloadFile.write(file, Arrays.asList(
+                new WorkloadFile.Entry(0L, "example.UserService/GetUser", frames, "{\"id\":7}"),
+                new WorkloadFile.Entry(250L, "example.UserService/ListUsers", new byte[0], "{}")));
+
+        List<WorkloadFile.Entry> entries = WorkloadFile.read(file);
+        assertEquals(2, entries.size());
+        WorkloadFile.Entry first = entries.get(0);
+        assertEquals(0L, first.getOffsetMillis());
+        assertEquals("example.UserService/GetUser", first.getMethod());
+        assertArrayEquals(frames, first.getFrames());
+        assertEquals("{\"id\":7}", first.getJson());
+        assertEquals(250L, entries.get(1).getOffsetMillis());
+        assertEquals(0, entries.get(1).getFrames().length);
+    }
+
+    @Test
+    public void readsEntriesInOffsetOrder() throws IOException {
+        Path file = folder.newFile("unordered.bin").toPath();
+        WorkloadFile.write(file, Arrays.asList(
+                new WorkloadFile.Entry(300L, "a.S/C", new byte[0], ""),
+                new WorkloadFile.Entry(0L, "a.S/A", new byte[0], ""),
+                new WorkloadFile.Entry(100L, "a.S/B", new byte[0], "")));
+
+        List<WorkloadFile.Entry> entries = WorkloadFile.read(file);
+        assertEquals("a.S/A", entries.get(0).getMethod());
+        assertEquals("a.S/B", entries.get(1).getMethod());
+        assertEquals("a.S/C", entries.get(2).getMethod());
+    }
+
+    @Test
+    public void readsAnEmptyWorkload() throws IOException {
+        Path file = folder.newFile("empty.bin").toPath();
+        WorkloadFile.write(file, Collections.<WorkloadFile.Entry>emptyList());
+        assertTrue(WorkloadFile.read(file).isEmpty());
+    }
+
+    @Test
+    public void splitsTheMethodName() {
+        WorkloadFile.Entry entry = new WorkloadFile.Entry(0L, "com.example.UserService/GetUser", new byte[0], "");
+        assertEquals("com.example", entry.getPackageName());
+        assertEquals("UserService", entry.getServiceName());
+        assertEquals("GetUser", entry.getMethodName());
+
+        WorkloadFile.Entry unpackaged = new WorkloadFile.Entry(0L, "UserService/GetUser", new byte[0], "");
+        assertEquals("", unpackaged.getPackageName());
+        assertEquals("UserService", unpackaged.getServiceName());
+    }
+}